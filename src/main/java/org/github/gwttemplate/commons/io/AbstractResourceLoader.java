@@ -10,7 +10,12 @@
  *******************************************************************************/
 package org.github.gwttemplate.commons.io;
 
+import java.util.Collections;
+import java.util.List;
+
 import com.google.gwt.core.client.GWT;
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
 import com.google.gwt.http.client.Request;
 import com.google.gwt.http.client.RequestBuilder;
 import com.google.gwt.http.client.RequestCallback;
@@ -31,6 +36,49 @@ import com.google.gwt.user.client.rpc.AsyncCallback;
  */
 public abstract class AbstractResourceLoader<T> {
 
+    /**
+     * The response cache used by all loaders without their own cache; it is
+     * <code>null</code> by default
+     */
+    private static ResourceCache fDefaultCache;
+
+    /**
+     * Returns the response cache used by all loaders without their own cache
+     * 
+     * @return the default response cache or <code>null</code>
+     */
+    public static ResourceCache getDefaultCache() {
+        return fDefaultCache;
+    }
+
+    /**
+     * Sets the response cache used by all loaders without their own cache (see
+     * {@link #setCache(ResourceCache)})
+     * 
+     * @param cache the default response cache; it can be <code>null</code>
+     */
+    public static void setDefaultCache(ResourceCache cache) {
+        fDefaultCache = cache;
+    }
+
+    /**
+     * The response cache of this loader; if it is <code>null</code> then the
+     * default cache is used
+     */
+    private ResourceCache fCache;
+
+    /**
+     * If this flag is <code>true</code> then loads identical to pending ones
+     * are attached to the pending requests (see {@link RequestRegistry}); it
+     * is <code>false</code> by default
+     */
+    private boolean fCoalescing;
+
+    /**
+     * The timeout of requests in milliseconds; 0 means no timeout
+     */
+    private int fTimeout;
+
     /**
      * The full URL to the local resource to load.
      */
@@ -59,6 +107,25 @@ public abstract class AbstractResourceLoader<T> {
         fUrl = baseURL + path;
     }
 
+    /**
+     * Returns the response cache used by this loader; it is the cache set by
+     * the {@link #setCache(ResourceCache)} method or the default cache
+     * 
+     * @return the response cache used by this loader or <code>null</code>
+     */
+    public ResourceCache getCache() {
+        return fCache != null ? fCache : fDefaultCache;
+    }
+
+    /**
+     * Returns the timeout of requests in milliseconds
+     * 
+     * @return the timeout of requests; 0 means no timeout
+     */
+    public int getTimeout() {
+        return fTimeout;
+    }
+
     /**
      * This method transforms the given HTTP request and responses into a final
      * result
@@ -93,17 +160,64 @@ public abstract class AbstractResourceLoader<T> {
      * @param callback the callback method used to notify about results of the
      *        loading process
      */
+    @SuppressWarnings("unchecked")
     public final void load(String content, final AsyncCallback<T> callback) {
         RequestBuilder request = newRequest();
+        final String key = RequestRegistry.getKey(
+            getClass().getName(),
+            request.getHTTPMethod(),
+            fUrl,
+            content);
+        final ResourceCache cache = content == null || "".equals(content)
+            ? getCache()
+            : null;
+        final ResourceCache.Entry entry = cache != null ? cache.get(key) : null;
+        if (entry != null && cache.isFresh(entry)) {
+            Scheduler.get().scheduleDeferred(new ScheduledCommand() {
+                public void execute() {
+                    callback.onSuccess((T) entry.fResult);
+                }
+            });
+            return;
+        }
+        if (fTimeout > 0) {
+            request.setTimeoutMillis(fTimeout);
+        }
+        if (entry != null && entry.hasValidators()) {
+            if (entry.fETag != null) {
+                request.setHeader("If-None-Match", entry.fETag);
+            }
+            if (entry.fLastModified != null) {
+                request.setHeader("If-Modified-Since", entry.fLastModified);
+            }
+        }
+        final RequestRegistry registry = fCoalescing ? RequestRegistry
+            .getInstance() : null;
+        if (registry != null && registry.attach(key, callback))
+            return;
         try {
             request.sendRequest(content, new RequestCallback() {
 
+                /**
+                 * Returns all callbacks waiting for the response
+                 * 
+                 * @return all callbacks waiting for the response
+                 */
+                private List<AsyncCallback<T>> getCallbacks() {
+                    if (registry == null)
+                        return Collections.singletonList(callback);
+                    List<?> callbacks = registry.remove(key);
+                    return (List<AsyncCallback<T>>) callbacks;
+                }
+
                 /**
                  * @see com.google.gwt.http.client.RequestCallback#onError(com.google.gwt.http.client.Request,
                  *      java.lang.Throwable)
                  */
                 public void onError(Request request, Throwable exception) {
-                    callback.onFailure(exception);
+                    for (AsyncCallback<T> c : getCallbacks()) {
+                        c.onFailure(exception);
+                    }
                 }
 
                 /**
@@ -113,25 +227,65 @@ public abstract class AbstractResourceLoader<T> {
                 public void onResponseReceived(
                     Request request,
                     Response response) {
+                    List<AsyncCallback<T>> callbacks = getCallbacks();
+                    T result;
                     try {
-                        T result = getResult(request, response);
-                        callback.onSuccess(result);
+                        if (entry != null
+                            && response.getStatusCode() == Response.SC_NOT_MODIFIED) {
+                            cache.revalidated(entry);
+                            result = (T) entry.fResult;
+                        } else {
+                            result = getResult(request, response);
+                            if (cache != null
+                                && response.getStatusCode() == Response.SC_OK) {
+                                cache.put(key, fUrl, response, result);
+                            }
+                        }
                     } catch (ResourceLoaderException e) {
-                        callback.onFailure(e);
+                        for (AsyncCallback<T> c : callbacks) {
+                            c.onFailure(e);
+                        }
+                        return;
                     } catch (Exception e) {
-                        callback.onFailure(new ResourceLoaderException(
-                            request,
-                            response,
-                            e));
+                        for (AsyncCallback<T> c : callbacks) {
+                            c.onFailure(new ResourceLoaderException(
+                                request,
+                                response,
+                                e));
+                        }
+                        return;
+                    }
+                    for (AsyncCallback<T> c : callbacks) {
+                        try {
+                            c.onSuccess(result);
+                        } catch (Exception e) {
+                            c.onFailure(new ResourceLoaderException(
+                                request,
+                                response,
+                                e));
+                        }
                     }
                 }
             });
         } catch (RequestException e) {
+            if (registry != null) {
+                registry.remove(key);
+            }
             callback.onFailure(e);
         }
 
     }
 
+    /**
+     * Returns <code>true</code> if loads identical to pending ones are
+     * attached to the pending requests instead of sending new requests
+     * 
+     * @return <code>true</code> if requests are coalesced
+     */
+    public boolean isCoalescing() {
+        return fCoalescing;
+    }
+
     /**
      * Returns a new HTTP request object
      * 
@@ -141,4 +295,44 @@ public abstract class AbstractResourceLoader<T> {
         return new RequestBuilder(RequestBuilder.GET, fUrl);
     }
 
+    /**
+     * Activates or deactivates the coalescing of identical requests. If it is
+     * active then a load identical to a pending one (same loader type, method,
+     * URL and body) does not send a new request; the result of the pending
+     * request is parsed once and the same result object is delivered to all
+     * callbacks. Shared results (for example XML documents) must not be
+     * modified by callbacks, so coalescing is not active by default and it
+     * should be activated only for loaders whose callbacks treat results as
+     * read-only.
+     * 
+     * @param coalescing the flag to set
+     */
+    public void setCoalescing(boolean coalescing) {
+        fCoalescing = coalescing;
+    }
+
+    /**
+     * Sets the timeout of requests sent by this loader. When a request times
+     * out it is cancelled and callbacks receive a
+     * {@link com.google.gwt.http.client.RequestTimeoutException}.
+     * 
+     * @param timeout the timeout in milliseconds; 0 means no timeout
+     */
+    public void setTimeout(int timeout) {
+        fTimeout = timeout;
+    }
+
+    /**
+     * Sets the response cache of this loader. Results of loads without
+     * content are stored in this cache and reused for the same URL; stale
+     * results are revalidated with conditional requests.
+     * 
+     * @param cache the response cache to set; if it is <code>null</code> then
+     *        the default cache is used (see
+     *        {@link #setDefaultCache(ResourceCache)})
+     */
+    public void setCache(ResourceCache cache) {
+        fCache = cache;
+    }
+
 }
@@ -0,0 +1,142 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.commons.io;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gwt.user.client.rpc.AsyncCallback;
+
+/**
+ * This is a registry of in-flight requests used to coalesce identical loads.
+ * When a loader starts a request which is identical to a pending one (same
+ * loader type, HTTP method, URL and body) then its callback is attached to
+ * the pending request instead of sending a new one. When the response is
+ * received it is parsed only once and the result is delivered to all attached
+ * callbacks in the order of their registration.
+ * <p>
+ * Results are shared by all attached callbacks so they should not be
+ * modified by callbacks.
+ * </p>
+ * 
+ * 
+ */
+public class RequestRegistry {
+
+    /**
+     * The shared registry used by default by all loaders
+     */
+    private static final RequestRegistry INSTANCE = new RequestRegistry();
+
+    /**
+     * Returns the shared registry used by default by all loaders
+     * 
+     * @return the shared registry
+     */
+    public static RequestRegistry getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the key identifying requests with the given parameters
+     * 
+     * @param type the type of the loader (the type of parsed results)
+     * @param method the HTTP method
+     * @param url the URL of the resource
+     * @param content the body of the request; it can be <code>null</code>
+     * @return the key identifying requests with the given parameters
+     */
+    static String getKey(String type, String method, String url, String content) {
+        StringBuffer buf = new StringBuffer();
+        buf.append(type);
+        buf.append(" ");
+        buf.append(method);
+        buf.append(" ");
+        buf.append(url);
+        buf.append("\n");
+        if (content != null) {
+            buf.append(content);
+        }
+        return buf.toString();
+    }
+
+    /**
+     * The number of loads attached to already pending requests
+     */
+    private int fCoalescedCount;
+
+    /**
+     * Keys of pending requests with the corresponding callbacks
+     */
+    private Map<String, List<AsyncCallback<?>>> fPending = new HashMap<String, List<AsyncCallback<?>>>();
+
+    /**
+     * Registers the given callback for the request with the specified key.
+     * This method returns <code>true</code> if such a request is already
+     * pending; in this case the caller should not send a new request.
+     * Otherwise the caller should send the request and deliver the result to
+     * all callbacks returned by the {@link #remove(String)} method.
+     * 
+     * @param key the key of the request
+     * @param callback the callback to register
+     * @return <code>true</code> if the callback was attached to a pending
+     *         request
+     */
+    boolean attach(String key, AsyncCallback<?> callback) {
+        List<AsyncCallback<?>> callbacks = fPending.get(key);
+        if (callbacks != null) {
+            callbacks.add(callback);
+            fCoalescedCount++;
+            return true;
+        }
+        callbacks = new ArrayList<AsyncCallback<?>>();
+        callbacks.add(callback);
+        fPending.put(key, callbacks);
+        return false;
+    }
+
+    /**
+     * Returns the number of loads attached to already pending requests
+     * 
+     * @return the number of coalesced loads
+     */
+    public int getCoalescedCount() {
+        return fCoalescedCount;
+    }
+
+    /**
+     * Returns the number of pending requests
+     * 
+     * @return the number of pending requests
+     */
+    public int getPendingCount() {
+        return fPending.size();
+    }
+
+    /**
+     * Removes the request with the specified key and returns all attached
+     * callbacks
+     * 
+     * @param key the key of the request
+     * @return a list of callbacks attached to the request
+     */
+    List<AsyncCallback<?>> remove(String key) {
+        List<AsyncCallback<?>> callbacks = fPending.remove(key);
+        if (callbacks == null) {
+            callbacks = Collections.emptyList();
+        }
+        return callbacks;
+    }
+
+}
@@ -0,0 +1,363 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.commons.io;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gwt.core.client.GWT;
+import com.google.gwt.http.client.Header;
+import com.google.gwt.http.client.Request;
+import com.google.gwt.http.client.Response;
+import com.google.gwt.http.client.URL;
+import com.google.gwt.user.client.rpc.AsyncCallback;
+
+/**
+ * This loader fetches several resources with one HTTP request. The URLs of all
+ * registered resources are sent to a bundle service (see
+ * <code>org.github.gwttemplate.server.ResourceBundleServlet</code>) which
+ * returns all resources in one length-prefixed response:
+ * 
+ * <pre>
+ * (statusCode ' ' length '\n' text)*
+ * </pre>
+ * <p>
+ * Each part of the response is parsed by the
+ * {@link AbstractResourceLoader#getResult(Request, Response)} method of the
+ * corresponding loader and the result is sent to the callback registered with
+ * this loader, so parts are handled exactly as if they were loaded
+ * individually. If the bundle request fails then all callbacks are notified
+ * about the failure.
+ * </p>
+ * 
+ * 
+ */
+public class ResourceBundleLoader {
+
+    /**
+     * The parsed bundle response together with the request which loaded it
+     */
+    private static class Bundle {
+
+        /**
+         * The part responses of the bundle
+         */
+        private List<Response> fParts;
+
+        /**
+         * The request used to load the bundle
+         */
+        private Request fRequest;
+
+        /**
+         * @param request the request used to load the bundle
+         * @param parts the part responses of the bundle
+         */
+        public Bundle(Request request, List<Response> parts) {
+            fRequest = request;
+            fParts = parts;
+        }
+
+    }
+
+    /**
+     * The transport loader sending the bundle request
+     */
+    private class BundleTransport extends AbstractResourceLoader<Bundle> {
+
+        /**
+         * @param url the full URL of the bundle request
+         */
+        public BundleTransport(String url) {
+            super(url, "");
+            setCoalescing(false);
+        }
+
+        /**
+         * Bundle responses depend on the list of requested resources so they
+         * are never cached
+         * 
+         * @see org.github.gwttemplate.commons.io.AbstractResourceLoader#getCache()
+         */
+        @Override
+        public ResourceCache getCache() {
+            return null;
+        }
+
+        /**
+         * @see org.github.gwttemplate.commons.io.AbstractResourceLoader#getResult(com.google.gwt.http.client.Request,
+         *      com.google.gwt.http.client.Response)
+         */
+        @Override
+        protected Bundle getResult(Request request, Response response)
+            throws ResourceLoaderException {
+            if (response.getStatusCode() != Response.SC_OK)
+                throw new ResourceLoaderException(request, response);
+            return new Bundle(request, parse(response.getText()));
+        }
+
+    }
+
+    /**
+     * The response corresponding to one part of a bundle
+     */
+    private static class PartResponse extends Response {
+
+        /**
+         * The status code of the part
+         */
+        private int fStatusCode;
+
+        /**
+         * The text of the part
+         */
+        private String fText;
+
+        /**
+         * @param statusCode the status code of the part
+         * @param text the text of the part
+         */
+        public PartResponse(int statusCode, String text) {
+            fStatusCode = statusCode;
+            fText = text;
+        }
+
+        @Override
+        public String getHeader(String header) {
+            return null;
+        }
+
+        @Override
+        public Header[] getHeaders() {
+            return new Header[0];
+        }
+
+        @Override
+        public String getHeadersAsString() {
+            return "";
+        }
+
+        @Override
+        public int getStatusCode() {
+            return fStatusCode;
+        }
+
+        @Override
+        public String getStatusText() {
+            return fStatusCode == SC_OK ? "OK" : "";
+        }
+
+        @Override
+        public String getText() {
+            return fText;
+        }
+
+    }
+
+    /**
+     * The name of the request parameter containing URLs of resources
+     */
+    public static final String PARAM_RESOURCE = "r";
+
+    /**
+     * Parses the given bundle response into individual part responses
+     * 
+     * @param text the bundle response
+     * @return a list of part responses
+     * @throws ResourceLoaderException if the response is malformed
+     */
+    static List<Response> parse(String text) throws ResourceLoaderException {
+        List<Response> result = new ArrayList<Response>();
+        int pos = 0;
+        try {
+            while (pos < text.length()) {
+                int space = text.indexOf(' ', pos);
+                int eol = text.indexOf('\n', space + 1);
+                int status = Integer.parseInt(text.substring(pos, space));
+                int len = Integer.parseInt(text.substring(space + 1, eol));
+                pos = eol + 1;
+                result.add(new PartResponse(status, text.substring(pos, pos
+                    + len)));
+                pos += len;
+            }
+        } catch (RuntimeException e) {
+            throw new ResourceLoaderException(null, null, e);
+        }
+        return result;
+    }
+
+    /**
+     * The full URL of the bundle service
+     */
+    private String fBundleUrl;
+
+    /**
+     * Callbacks of registered resources
+     */
+    private List<AsyncCallback<?>> fCallbacks = new ArrayList<AsyncCallback<?>>();
+
+    /**
+     * Loaders used to parse parts of the bundle
+     */
+    private List<AbstractResourceLoader<?>> fLoaders = new ArrayList<AbstractResourceLoader<?>>();
+
+    /**
+     * This constructor builds the URL of the bundle service relative to the
+     * base URL of the current application module.
+     * 
+     * @param path the local path of the bundle service
+     */
+    public ResourceBundleLoader(String path) {
+        this(GWT.getModuleBaseURL(), path);
+    }
+
+    /**
+     * @param baseURL the base URL used to build the full URL
+     * @param path the local path of the bundle service relative to the base
+     *        URL
+     */
+    public ResourceBundleLoader(String baseURL, String path) {
+        fBundleUrl = baseURL + path;
+    }
+
+    /**
+     * Registers a new resource to load. The given loader defines the URL of
+     * the resource and it is used to parse the corresponding part of the
+     * bundle.
+     * 
+     * @param loader the loader of the resource
+     * @param callback the callback notified about the result
+     */
+    public <T> void add(
+        AbstractResourceLoader<T> loader,
+        AsyncCallback<T> callback) {
+        fLoaders.add(loader);
+        fCallbacks.add(callback);
+    }
+
+    /**
+     * Returns the full URL of the bundle request
+     * 
+     * @return the full URL of the bundle request
+     */
+    protected String getRequestUrl() {
+        StringBuffer buf = new StringBuffer(fBundleUrl);
+        char separator = fBundleUrl.indexOf('?') >= 0 ? '&' : '?';
+        for (AbstractResourceLoader<?> loader : fLoaders) {
+            buf.append(separator);
+            buf.append(PARAM_RESOURCE);
+            buf.append("=");
+            buf.append(URL.encodeQueryString(loader.fUrl));
+            separator = '&';
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Loads all registered resources with one request
+     */
+    public void load() {
+        load(null);
+    }
+
+    /**
+     * Loads all registered resources with one request. Callbacks of
+     * individual resources are notified first; then the given callback
+     * receives the list of all successful results.
+     * 
+     * @param callback the callback notified when all parts are dispatched; it
+     *        can be <code>null</code>
+     */
+    public void load(final AsyncCallback<List<Object>> callback) {
+        final List<AbstractResourceLoader<?>> loaders = new ArrayList<AbstractResourceLoader<?>>(
+            fLoaders);
+        final List<AsyncCallback<?>> callbacks = new ArrayList<AsyncCallback<?>>(
+            fCallbacks);
+        new BundleTransport(getRequestUrl())
+            .load(new AsyncCallback<Bundle>() {
+                public void onFailure(Throwable caught) {
+                    for (AsyncCallback<?> c : callbacks) {
+                        if (c != null) {
+                            c.onFailure(caught);
+                        }
+                    }
+                    if (callback != null) {
+                        callback.onFailure(caught);
+                    }
+                }
+
+                public void onSuccess(Bundle bundle) {
+                    List<Response> parts = bundle.fParts;
+                    List<Object> results = new ArrayList<Object>();
+                    for (int i = 0; i < loaders.size(); i++) {
+                        Response part = i < parts.size() ? parts.get(i) : null;
+                        Object result = dispatch(
+                            bundle.fRequest,
+                            loaders.get(i),
+                            callbacks.get(i),
+                            part);
+                        if (result != null) {
+                            results.add(result);
+                        }
+                    }
+                    if (callback != null) {
+                        callback.onSuccess(results);
+                    }
+                }
+            });
+    }
+
+    /**
+     * Parses the given part with the specified loader and notifies the
+     * callback
+     * 
+     * @param request the request used to load the bundle
+     * @param loader the loader used to parse the part
+     * @param callback the callback to notify; it can be <code>null</code>
+     * @param part the part of the bundle; it is <code>null</code> if the
+     *        bundle does not contain this part
+     * @return the parsed result or <code>null</code> if the part could not be
+     *         parsed
+     */
+    @SuppressWarnings("unchecked")
+    private Object dispatch(
+        Request request,
+        AbstractResourceLoader<?> loader,
+        AsyncCallback<?> callback,
+        Response part) {
+        AsyncCallback<Object> c = (AsyncCallback<Object>) callback;
+        Object result;
+        try {
+            if (part == null)
+                throw new ResourceLoaderException(request, null);
+            result = loader.getResult(request, part);
+        } catch (ResourceLoaderException e) {
+            if (c != null) {
+                c.onFailure(e);
+            }
+            return null;
+        } catch (Exception e) {
+            if (c != null) {
+                c.onFailure(new ResourceLoaderException(request, part, e));
+            }
+            return null;
+        }
+        if (c != null) {
+            try {
+                c.onSuccess(result);
+            } catch (Exception e) {
+                c.onFailure(new ResourceLoaderException(request, part, e));
+            }
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,331 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.commons.io;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import com.google.gwt.http.client.Response;
+
+/**
+ * This is an in-memory LRU cache of loaded resources used by
+ * {@link AbstractResourceLoader} instances. Each entry contains the parsed
+ * result of a loader with the validators (ETag and Last-Modified headers) of
+ * the corresponding response. Fresh entries (younger than the time-to-live of
+ * this cache) are returned without any request; older entries are revalidated
+ * with conditional requests and reused if the server responds with the "304
+ * Not Modified" status. The cache is bounded by the number of entries and by
+ * the total size of cached responses (in characters); when a bound is
+ * exceeded the least recently used entries are evicted.
+ * <p>
+ * Entries are identified by the type of the loader, the HTTP method and the
+ * URL (see {@link RequestRegistry#getKey(String, String, String, String)}),
+ * so loaders parsing the same resource into different types never get each
+ * other's results. Cached results are shared by all loaders of the same type
+ * using the same URL so they should not be modified by callbacks.
+ * </p>
+ * 
+ * 
+ */
+public class ResourceCache {
+
+    /**
+     * An entry of the cache
+     */
+    static class Entry {
+
+        /**
+         * The value of the ETag header of the response
+         */
+        String fETag;
+
+        /**
+         * The value of the Last-Modified header of the response
+         */
+        String fLastModified;
+
+        /**
+         * The parsed result of the loader
+         */
+        Object fResult;
+
+        /**
+         * The URL of the resource
+         */
+        String fUrl;
+
+        /**
+         * The size of the response text
+         */
+        int fSize;
+
+        /**
+         * The time when the entry was stored or revalidated
+         */
+        double fTime;
+
+        /**
+         * Returns <code>true</code> if this entry can be revalidated with a
+         * conditional request
+         * 
+         * @return <code>true</code> if this entry has validators
+         */
+        boolean hasValidators() {
+            return fETag != null || fLastModified != null;
+        }
+    }
+
+    /**
+     * The default maximal number of entries
+     */
+    public static final int DEFAULT_MAX_ENTRIES = 64;
+
+    /**
+     * The default maximal total size of cached responses (in characters)
+     */
+    public static final int DEFAULT_MAX_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * The default time-to-live of entries in milliseconds
+     */
+    public static final int DEFAULT_TTL = 60 * 1000;
+
+    /**
+     * Cached entries in the LRU order; the least recently used entry is the
+     * first one.
+     */
+    private Map<String, Entry> fEntries = new LinkedHashMap<String, Entry>();
+
+    /**
+     * The number of loads served by fresh entries
+     */
+    private int fHitCount;
+
+    /**
+     * The maximal number of entries
+     */
+    private int fMaxEntries;
+
+    /**
+     * The maximal total size of cached responses
+     */
+    private int fMaxSize;
+
+    /**
+     * The number of entries revalidated by "304 Not Modified" responses
+     */
+    private int fRevalidationCount;
+
+    /**
+     * The total size of cached responses
+     */
+    private int fSize;
+
+    /**
+     * The time-to-live of entries in milliseconds
+     */
+    private int fTTL;
+
+    /**
+     * This constructor uses default bounds
+     */
+    public ResourceCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_MAX_SIZE, DEFAULT_TTL);
+    }
+
+    /**
+     * This constructor initializes bounds of this cache
+     * 
+     * @param maxEntries the maximal number of entries
+     * @param maxSize the maximal total size of cached responses (in
+     *        characters)
+     * @param ttl the time-to-live of entries in milliseconds; older entries
+     *        are revalidated
+     */
+    public ResourceCache(int maxEntries, int maxSize, int ttl) {
+        fMaxEntries = maxEntries;
+        fMaxSize = maxSize;
+        fTTL = ttl;
+    }
+
+    /**
+     * Removes all entries from this cache
+     */
+    public void clear() {
+        fEntries.clear();
+        fSize = 0;
+    }
+
+    /**
+     * Removes the least recently used entries exceeding bounds of this cache
+     */
+    private void evict() {
+        Iterator<Entry> iterator = fEntries.values().iterator();
+        while (fEntries.size() > Math.max(fMaxEntries, 0) || fSize > fMaxSize) {
+            Entry eldest = iterator.next();
+            iterator.remove();
+            fSize -= eldest.fSize;
+        }
+    }
+
+    /**
+     * Returns the entry corresponding to the given key and marks it as the
+     * most recently used one
+     * 
+     * @param key the key of the request (see
+     *        {@link RequestRegistry#getKey(String, String, String, String)})
+     * @return the entry corresponding to the key or <code>null</code>
+     */
+    Entry get(String key) {
+        Entry entry = fEntries.remove(key);
+        if (entry != null) {
+            fEntries.put(key, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Returns the number of loads served by fresh entries without requests
+     * 
+     * @return the number of cache hits
+     */
+    public int getHitCount() {
+        return fHitCount;
+    }
+
+    /**
+     * Returns the number of entries reused after "304 Not Modified" responses
+     * 
+     * @return the number of successful revalidations
+     */
+    public int getRevalidationCount() {
+        return fRevalidationCount;
+    }
+
+    /**
+     * Returns the number of entries in this cache
+     * 
+     * @return the number of entries in this cache
+     */
+    public int getSize() {
+        return fEntries.size();
+    }
+
+    /**
+     * Returns <code>true</code> if the given entry can be used without
+     * revalidation. This method counts cache hits.
+     * 
+     * @param entry the entry to check
+     * @return <code>true</code> if the entry is fresh
+     */
+    boolean isFresh(Entry entry) {
+        boolean fresh = now() - entry.fTime < fTTL;
+        if (fresh) {
+            fHitCount++;
+        }
+        return fresh;
+    }
+
+    /**
+     * Returns the current time in milliseconds
+     * 
+     * @return the current time
+     */
+    private double now() {
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * Stores the parsed result of the given response. Responses forbidding
+     * storage ("Cache-Control: no-store") are not cached.
+     * 
+     * @param key the key of the request (see
+     *        {@link RequestRegistry#getKey(String, String, String, String)})
+     * @param url the URL of the resource
+     * @param response the response
+     * @param result the parsed result
+     */
+    void put(String key, String url, Response response, Object result) {
+        removeEntry(key);
+        String control = response.getHeader("Cache-Control");
+        if (control != null && control.indexOf("no-store") >= 0)
+            return;
+        String text = response.getText();
+        Entry entry = new Entry();
+        entry.fETag = response.getHeader("ETag");
+        entry.fLastModified = response.getHeader("Last-Modified");
+        entry.fResult = result;
+        entry.fUrl = url;
+        entry.fSize = text != null ? text.length() : 0;
+        entry.fTime = now();
+        if (entry.fSize > fMaxSize)
+            return;
+        fEntries.put(key, entry);
+        fSize += entry.fSize;
+        evict();
+    }
+
+    /**
+     * Removes all entries corresponding to the given URL (results of all
+     * loader types)
+     * 
+     * @param url the URL of the resource
+     */
+    public void remove(String url) {
+        Iterator<Entry> iterator = fEntries.values().iterator();
+        while (iterator.hasNext()) {
+            Entry entry = iterator.next();
+            if (url.equals(entry.fUrl)) {
+                iterator.remove();
+                fSize -= entry.fSize;
+            }
+        }
+    }
+
+    /**
+     * Removes the entry with the given key
+     * 
+     * @param key the key of the entry
+     */
+    private void removeEntry(String key) {
+        Entry entry = fEntries.remove(key);
+        if (entry != null) {
+            fSize -= entry.fSize;
+        }
+    }
+
+    /**
+     * Marks the given entry as revalidated by a "304 Not Modified" response
+     * 
+     * @param entry the revalidated entry
+     */
+    void revalidated(Entry entry) {
+        entry.fTime = now();
+        fRevalidationCount++;
+    }
+
+    /**
+     * Sets new bounds of this cache. Entries exceeding new bounds are evicted.
+     * 
+     * @param maxEntries the maximal number of entries
+     * @param maxSize the maximal total size of cached responses (in
+     *        characters)
+     * @param ttl the time-to-live of entries in milliseconds
+     */
+    public void setLimits(int maxEntries, int maxSize, int ttl) {
+        fMaxEntries = maxEntries;
+        fMaxSize = maxSize;
+        fTTL = ttl;
+        evict();
+    }
+
+}
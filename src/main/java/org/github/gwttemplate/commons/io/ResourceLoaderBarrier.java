@@ -11,18 +11,44 @@
 package org.github.gwttemplate.commons.io;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
 
+import com.google.gwt.http.client.RequestException;
+import com.google.gwt.http.client.Response;
+import com.google.gwt.user.client.Timer;
 import com.google.gwt.user.client.rpc.AsyncCallback;
 
 /**
  * This is a synchronization tool used to wait a set of resource loader and
- * launch a user-specific code when all resources are loaded.
+ * launch a user-specific code when all resources are loaded. Loaders are
+ * started in the order of their priorities; the number of simultaneously
+ * running loaders can be limited (see {@link #setMaxConcurrency(int)}). Each
+ * loader can be restricted by a timeout and failed loads can be retried with
+ * an exponential backoff (see {@link #setTimeout(int)} and
+ * {@link #setRetries(int, int)}).
  * 
  * 
  */
 public abstract class ResourceLoaderBarrier {
 
+    /**
+     * The default priority of loaders
+     */
+    public static final int DEFAULT_PRIORITY = 0;
+
+    /**
+     * The default delay before the first retry of a failed load (in
+     * milliseconds); each next retry doubles the delay
+     */
+    public static final int DEFAULT_RETRY_DELAY = 500;
+
+    /**
+     * The number of running loaders
+     */
+    private int fActive;
+
     /**
      * List of callback objects for each resource loader. Each item in this list
      * corresponds to a resource loader from the {@link #fLoaders} list.
@@ -40,11 +66,47 @@ public abstract class ResourceLoaderBarrier {
      */
     private List<AbstractResourceLoader<?>> fLoaders = new ArrayList<AbstractResourceLoader<?>>();
 
+    /**
+     * The maximal number of simultaneously running loaders; 0 means no limit
+     */
+    private int fMaxConcurrency;
+
+    /**
+     * The maximal number of retries of a failed load
+     */
+    private int fMaxRetries;
+
+    /**
+     * The position of the next loader to start in the {@link #fQueue} list
+     */
+    private int fNext;
+
+    /**
+     * Priorities of loaders. Each item in this list corresponds to a loader
+     * from the {@link #fLoaders} list.
+     */
+    private List<Integer> fPriorities = new ArrayList<Integer>();
+
+    /**
+     * Indexes of loaders in the start order
+     */
+    private List<Integer> fQueue;
+
+    /**
+     * The delay before the first retry of a failed load (in milliseconds)
+     */
+    private int fRetryDelay = DEFAULT_RETRY_DELAY;
+
     /**
      * List of successfull results returned by loaders.
      */
     private List<Object> fSuccessList;
 
+    /**
+     * The timeout of each load in milliseconds; 0 means no timeout
+     */
+    private int fTimeout;
+
     /**
      * Adds a new loader to the internal list. This loader is activated (the
      * method {@link ResourceLoader#load(String, AsyncCallback)} is called) with
@@ -57,9 +119,27 @@ public abstract class ResourceLoaderBarrier {
     public <T> void add(
         AbstractResourceLoader<T> loader,
         AsyncCallback<T> callback) {
+        add(loader, callback, DEFAULT_PRIORITY);
+    }
+
+    /**
+     * Adds a new loader with the specified priority to the internal list.
+     * Loaders with higher priorities are started first; loaders with the same
+     * priority are started in the order of their registration.
+     * 
+     * @param loader the loader to add to this barrier
+     * @param callback the callback object used to notify about results of the
+     *        loading process
+     * @param priority the priority of the loader
+     */
+    public <T> void add(
+        AbstractResourceLoader<T> loader,
+        AsyncCallback<T> callback,
+        int priority) {
         checkActivation();
         fLoaders.add(loader);
         fCallbacks.add(callback);
+        fPriorities.add(priority);
     }
 
     /**
@@ -85,65 +165,153 @@ public abstract class ResourceLoaderBarrier {
     }
 
     /**
-     * This method activates all resource loaders from the internal list. When
-     * all loaders finish their work (they are finished successfully or failed)
-     * then this method asynchronously calls the {@link #onFinish(List, List)}
-     * method.
+     * Returns <code>true</code> if a load failed with the given error should
+     * be retried. Only transient failures are retried: transport errors and
+     * timeouts ({@link RequestException}) and responses with the 0 or 5xx
+     * status codes. Client errors (4xx status codes) and errors raised while
+     * parsing or processing a response would fail the same way again, so
+     * they are not retried.
+     * 
+     * @param caught the error
+     * @return <code>true</code> if the load should be retried
+     */
+    protected boolean isRetryable(Throwable caught) {
+        if (caught instanceof ResourceLoaderException) {
+            ResourceLoaderException e = (ResourceLoaderException) caught;
+            if (e.getException() != null)
+                return false;
+            Response response = e.getResponse();
+            int code = response != null ? response.getStatusCode() : 0;
+            return code == 0 || code >= 500;
+        }
+        return caught instanceof RequestException;
+    }
+
+    /**
+     * This method activates resource loaders from the internal list in the
+     * order of their priorities; if the number of simultaneously running
+     * loaders is limited then other loaders are started when running ones
+     * finish their work. When all loaders finish their work (they are
+     * finished successfully or failed) then this method asynchronously calls
+     * the {@link #onFinish(List, List)} method.
      * 
      * @see #onFinish(List, List)
      */
-    @SuppressWarnings("unchecked")
     public void load() {
         checkActivation();
         fSuccessList = new ArrayList<Object>();
         fFailureList = new ArrayList<Throwable>();
-        final int len = fLoaders.size();
-        for (int i = 0; i < len; i++) {
-            AbstractResourceLoader<Object> loader = (AbstractResourceLoader<Object>) fLoaders
-                .get(i);
-            final AsyncCallback<Object> callback = (AsyncCallback<Object>) fCallbacks
-                .get(i);
-            loader.load(new AsyncCallback<Object>() {
-
-                /**
-                 * This method checks if all loaders finish their work and if so
-                 * it calls the
-                 * {@link ResourceLoaderBarrier#onFinish(List, List)} method
-                 */
-                private void checkEnd() {
-                    if (fSuccessList.size() + fFailureList.size() == len) {
-                        onFinish(fSuccessList, fFailureList);
-                    }
-                }
+        fQueue = new ArrayList<Integer>();
+        for (int i = 0; i < fLoaders.size(); i++) {
+            fQueue.add(i);
+        }
+        Collections.sort(fQueue, new Comparator<Integer>() {
+            public int compare(Integer o1, Integer o2) {
+                int p1 = fPriorities.get(o1);
+                int p2 = fPriorities.get(o2);
+                return p1 > p2 ? -1 : p1 < p2 ? 1 : 0;
+            }
+        });
+        fNext = 0;
+        fActive = 0;
+        startNext();
+    }
+
+    /**
+     * This method is called when a loader finishes its work. It calls the
+     * {@link #onFinish(List, List)} method if all loaders are finished;
+     * otherwise it starts waiting loaders.
+     */
+    private void onLoaderFinish() {
+        fActive--;
+        if (fSuccessList.size() + fFailureList.size() == fLoaders.size()) {
+            onFinish(fSuccessList, fFailureList);
+        } else {
+            startNext();
+        }
+    }
+
+    /**
+     * Starts the loader with the specified index. Each start is finished only
+     * once: if the callback of the loader throws an exception while it is
+     * notified about the result then the loader reports this exception as a
+     * failure of the same load; such notifications are ignored.
+     * 
+     * @param index the index of the loader
+     * @param attempt the number of previous failed attempts
+     */
+    @SuppressWarnings("unchecked")
+    private void start(final int index, final int attempt) {
+        AbstractResourceLoader<Object> loader = (AbstractResourceLoader<Object>) fLoaders
+            .get(index);
+        final AsyncCallback<Object> callback = (AsyncCallback<Object>) fCallbacks
+            .get(index);
+        if (fTimeout > 0) {
+            loader.setTimeout(fTimeout);
+        }
+        loader.load(new AsyncCallback<Object>() {
+
+            /**
+             * This flag is <code>true</code> when the result of this start is
+             * already handled
+             */
+            private boolean fFinished;
 
-                /**
-                 * @see com.google.gwt.user.client.rpc.AsyncCallback#onFailure(java.lang.Throwable)
-                 */
-                public void onFailure(Throwable caught) {
-                    fFailureList.add(caught);
-                    try {
-                        if (callback != null) {
-                            callback.onFailure(caught);
+            /**
+             * @see com.google.gwt.user.client.rpc.AsyncCallback#onFailure(java.lang.Throwable)
+             */
+            public void onFailure(Throwable caught) {
+                if (fFinished)
+                    return;
+                fFinished = true;
+                if (attempt < fMaxRetries && isRetryable(caught)) {
+                    Timer timer = new Timer() {
+                        @Override
+                        public void run() {
+                            start(index, attempt + 1);
                         }
-                    } finally {
-                        checkEnd();
+                    };
+                    timer.schedule(fRetryDelay << attempt);
+                    return;
+                }
+                fFailureList.add(caught);
+                try {
+                    if (callback != null) {
+                        callback.onFailure(caught);
                     }
+                } finally {
+                    onLoaderFinish();
                 }
+            }
 
-                /**
-                 * @see com.google.gwt.user.client.rpc.AsyncCallback#onSuccess(java.lang.Object)
-                 */
-                public void onSuccess(Object result) {
-                    fSuccessList.add(result);
-                    try {
-                        if (callback != null) {
-                            callback.onSuccess(result);
-                        }
-                    } finally {
-                        checkEnd();
+            /**
+             * @see com.google.gwt.user.client.rpc.AsyncCallback#onSuccess(java.lang.Object)
+             */
+            public void onSuccess(Object result) {
+                if (fFinished)
+                    return;
+                fFinished = true;
+                fSuccessList.add(result);
+                try {
+                    if (callback != null) {
+                        callback.onSuccess(result);
                     }
+                } finally {
+                    onLoaderFinish();
                 }
-            });
+            }
+        });
+    }
+
+    /**
+     * Starts waiting loaders while the concurrency limit is not reached
+     */
+    private void startNext() {
+        while (fNext < fQueue.size()
+            && (fMaxConcurrency <= 0 || fActive < fMaxConcurrency)) {
+            int index = fQueue.get(fNext++);
+            fActive++;
+            start(index, 0);
         }
     }
 
@@ -163,4 +331,39 @@ public abstract class ResourceLoaderBarrier {
     protected abstract void onFinish(
         List<Object> successList,
         List<Throwable> failureList);
+
+    /**
+     * Sets the maximal number of simultaneously running loaders. This method
+     * should be called before the {@link #load()} method.
+     * 
+     * @param maxConcurrency the maximal number of running loaders; 0 means no
+     *        limit
+     */
+    public void setMaxConcurrency(int maxConcurrency) {
+        fMaxConcurrency = maxConcurrency;
+    }
+
+    /**
+     * Sets the retry policy for failed loads. A failed load is restarted after
+     * the given delay; the delay is doubled for each next retry. Callbacks are
+     * notified only about the final result of each loader. Only transient
+     * failures are retried (see {@link #isRetryable(Throwable)}).
+     * 
+     * @param maxRetries the maximal number of retries of each loader
+     * @param delay the delay before the first retry in milliseconds
+     */
+    public void setRetries(int maxRetries, int delay) {
+        fMaxRetries = maxRetries;
+        fRetryDelay = delay;
+    }
+
+    /**
+     * Sets the timeout of each load. Timed out loads are cancelled; they can
+     * be retried (see {@link #setRetries(int, int)}).
+     * 
+     * @param timeout the timeout in milliseconds; 0 means no timeout
+     */
+    public void setTimeout(int timeout) {
+        fTimeout = timeout;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,276 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.processor;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+import org.github.gwttemplate.templates.AttributeTable;
+import org.github.gwttemplate.templates.ElementCache;
+import org.github.gwttemplate.templates.FieldInfoFactory;
+import org.github.gwttemplate.templates.FieldInfoFactoryRegistry;
+import org.github.gwttemplate.templates.TemplateNamespaces;
+import org.github.gwttemplate.templates.XMLUtil;
+import org.github.gwttemplate.templates.cache.CacheBuilder;
+import org.github.gwttemplate.templates.cache.CompositeCacheNode;
+import org.w3c.dom.Attr;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.NamedNodeMap;
+import org.w3c.dom.Node;
+import org.w3c.dom.Text;
+
+/**
+ * This compiler transforms templates defined in a JVM (W3C) DOM document into
+ * the same cache structures as the ones built in the browser by the
+ * {@link org.github.gwttemplate.templates.TemplatePanelBuilder}. It is used to
+ * compile templates outside of the browser.
+ * 
+ * 
+ */
+public class DomTemplateCompiler implements TemplateNamespaces {
+
+    /**
+     * Returns a map containing all attributes of the given element. This map
+     * contains full URLs of attributes with the corresponding attribute values.
+     * 
+     * @param e the element used as a source of attributes
+     * @return a map containing all attributes of the given element
+     */
+    public static Map<String, String> getAttributes(Element e) {
+        Map<String, String> result = new HashMap<String, String>();
+        NamedNodeMap attributes = e.getAttributes();
+        for (int i = 0; i < attributes.getLength(); i++) {
+            Attr attr = (Attr) attributes.item(i);
+            result.put(getURL(attr), attr.getValue());
+        }
+        return result;
+    }
+
+    /**
+     * Returns the URL corresponding to the given node using the namespace of
+     * the node and the local name (see {@link XMLUtil#getURL}).
+     * 
+     * @param node the node for which the corresponding URL should be returned
+     * @return an URL corresponding to the given node
+     */
+    public static String getURL(Node node) {
+        if (node == null)
+            return null;
+        String prefix = node.getPrefix();
+        String name = node.getNodeName();
+        if (prefix != null) {
+            name = name.substring(prefix.length() + 1);
+        }
+        String ns = node.getNamespaceURI();
+        if (ns != null && !ns.endsWith("#") && !ns.endsWith("/")) {
+            ns += "#";
+        }
+        return ns != null ? ns + name : name;
+    }
+
+    /**
+     * Generates an opening tag corresponding to the specified element and
+     * appends it to the buffer (see {@link XMLUtil#serializeOpenTag}).
+     * 
+     * @param e the element for which an opening tag should be generated
+     * @param buf the buffer where the result is appended
+     */
+    public static void serializeOpenTag(Element e, StringBuffer buf) {
+        buf.append("<");
+        buf.append(e.getTagName());
+        NamedNodeMap attributes = e.getAttributes();
+        int len = attributes.getLength();
+        for (int i = 0; i < len; i++) {
+            Attr attr = (Attr) attributes.item(i);
+            buf.append(" ");
+            buf.append(attr.getName());
+            buf.append("='");
+            XMLUtil.escape(attr.getValue(), buf);
+            buf.append("'");
+        }
+        buf.append(">");
+    }
+
+    /**
+     * The cache builder transforming DOM nodes into cache structures
+     */
+    private CacheBuilder<Node> fBuilder = new CacheBuilder<Node>() {
+
+        @Override
+        protected Iterator<Node> getChildren(
+            Node node,
+            CompositeCacheNode compositeNode) {
+            if (!(node instanceof Element))
+                return null;
+            final Element e = (Element) node;
+            return new Iterator<Node>() {
+
+                Node node = e.getFirstChild();
+
+                public boolean hasNext() {
+                    return node != null;
+                }
+
+                public Node next() {
+                    Node n = node;
+                    node = node != null ? node.getNextSibling() : null;
+                    return n;
+                }
+
+                public void remove() {
+                    throw new UnsupportedOperationException();
+                }
+
+            };
+        }
+
+        @Override
+        protected CompositeCacheNode getCompositeNode(Node object) {
+            if (!(object instanceof Element))
+                return null;
+            Element e = (Element) object;
+            String tagURI = getURL(e);
+            FieldInfoFactory factory = getFieldInfoFactory(tagURI);
+            return factory != null ? newElementCache(factory, e) : null;
+        }
+
+        @Override
+        protected String getTextPrefix(
+            Node node,
+            CompositeCacheNode compositeNode) {
+            if (compositeNode != null)
+                return null;
+            if (node instanceof Element) {
+                StringBuffer buf = new StringBuffer();
+                if (!getURL(node).startsWith(NS_TEMPLATES)) {
+                    serializeOpenTag((Element) node, buf);
+                }
+                return buf.toString();
+            } else if (node instanceof Text) {
+                StringBuffer buf = new StringBuffer();
+                XMLUtil.escape(((Text) node).getData(), buf);
+                return buf.toString();
+            }
+            return null;
+        }
+
+        @Override
+        protected String getTextSuffix(
+            Node node,
+            CompositeCacheNode compositeNode) {
+            if (compositeNode != null)
+                return null;
+            if (node instanceof Element) {
+                StringBuffer buf = new StringBuffer();
+                if (!getURL(node).startsWith(NS_TEMPLATES)) {
+                    buf.append("</");
+                    buf.append(((Element) node).getNodeName());
+                    buf.append(">");
+                }
+                return buf.toString();
+            }
+            return null;
+        }
+
+        @Override
+        protected CompositeCacheNode newTopNode(Node object) {
+            return newElementCache(null, (Element) object);
+        }
+
+    };
+
+    /**
+     * The registry used to define which elements correspond to widgets
+     */
+    private FieldInfoFactoryRegistry fRegistry;
+
+    /**
+     * This constructor initializes the registry used to define which template
+     * elements correspond to widgets.
+     * 
+     * @param registry the registry of field wrapper factories
+     */
+    public DomTemplateCompiler(FieldInfoFactoryRegistry registry) {
+        fRegistry = registry;
+    }
+
+    /**
+     * Compiles the given template element
+     * 
+     * @param templateNode the element defining the template
+     * @return the cached template structure
+     */
+    public CompositeCacheNode compile(Element templateNode) {
+        return fBuilder.build(templateNode);
+    }
+
+    /**
+     * Compiles all templates declared in the given document
+     * 
+     * @param doc the document containing template declarations
+     * @return a list of compiled templates
+     */
+    public List<TemplateDefinition> compileTemplates(Document doc) {
+        List<TemplateDefinition> result = new ArrayList<TemplateDefinition>();
+        Element e = doc.getDocumentElement();
+        String url = NS_TEMPLATES + "template";
+        Node child = e.getFirstChild();
+        while (child != null) {
+            if (child instanceof Element && url.equals(getURL(child))) {
+                Element element = (Element) child;
+                Map<String, String> attributes = getAttributes(element);
+                String name = attributes.get(X_ATTR_NAME);
+                if (name != null) {
+                    CompositeCacheNode template = compile(element);
+                    result.add(new TemplateDefinition(
+                        name,
+                        template,
+                        attributes));
+                }
+            }
+            child = child.getNextSibling();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the field wrapper factory corresponding to the specified tag
+     * 
+     * @param tagURI the full URI of the tag
+     * @return the field wrapper factory or <code>null</code> if the tag does
+     *         not correspond to a widget
+     */
+    private FieldInfoFactory getFieldInfoFactory(String tagURI) {
+        String ns = XMLUtil.getNamespace(tagURI);
+        String name = XMLUtil.getLocalName(tagURI);
+        return fRegistry.getFieldInfoFactoryNS(ns, name);
+    }
+
+    /**
+     * Creates a new cached element corresponding to the given DOM element
+     * 
+     * @param factory the field wrapper factory
+     * @param e the DOM element
+     * @return a new cached element
+     */
+    private ElementCache newElementCache(FieldInfoFactory factory, Element e) {
+        String tagURI = getURL(e);
+        Map<String, String> attributes = getAttributes(e);
+        attributes.put(TAG_URI, tagURI);
+        return new ElementCache(factory, tagURI, new AttributeTable(
+            attributes));
+    }
+
+}
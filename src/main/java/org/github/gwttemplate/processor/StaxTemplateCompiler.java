@@ -0,0 +1,427 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.processor;
+
+import java.io.InputStream;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.github.gwttemplate.templates.AttributeTable;
+import org.github.gwttemplate.templates.ElementCache;
+import org.github.gwttemplate.templates.FieldInfoFactory;
+import org.github.gwttemplate.templates.FieldInfoFactoryRegistry;
+import org.github.gwttemplate.templates.TemplateNamespaces;
+import org.github.gwttemplate.templates.XMLUtil;
+import org.github.gwttemplate.templates.cache.CacheNode;
+import org.github.gwttemplate.templates.cache.TextCacheNode;
+
+/**
+ * This is a pure JVM template compiler based on StAX. It reads template
+ * documents as streams of events and builds the same cache structures (
+ * {@link ElementCache} and {@link TextCacheNode} trees) as the ones built in
+ * the browser by the {@link org.github.gwttemplate.templates.TemplatePanelBuilder}
+ * using the same serialization rules as {@link XMLUtil}. No DOM is created;
+ * only the currently opened elements are kept in memory.
+ * 
+ * 
+ */
+public class StaxTemplateCompiler implements TemplateNamespaces {
+
+    /**
+     * Instances of this type accumulate children of a dynamic element (or of
+     * the topmost template element) while the element is read.
+     */
+    private static class CompositeFrame {
+
+        /**
+         * Attributes of the element
+         */
+        AttributeTable fAttributes;
+
+        /**
+         * Children of the element
+         */
+        List<CacheNode> fChildren = new ArrayList<CacheNode>();
+
+        /**
+         * The field wrapper factory of the element
+         */
+        FieldInfoFactory fFactory;
+
+        /**
+         * The full URI of the element
+         */
+        String fTagURI;
+
+        /**
+         * Creates a new cached element with all accumulated children
+         * 
+         * @return a new cached element
+         */
+        ElementCache newElementCache() {
+            CacheNode[] children = fChildren.toArray(new CacheNode[fChildren
+                .size()]);
+            return new ElementCache(fFactory, fTagURI, fAttributes, children);
+        }
+    }
+
+    /**
+     * Instances of this type describe opened elements
+     */
+    private static class ElementFrame {
+
+        /**
+         * This flag is <code>true</code> if the element is a dynamic node
+         */
+        boolean fDynamic;
+
+        /**
+         * The qualified name of the element used in closing tags; it is
+         * <code>null</code> if the element should not be serialized
+         */
+        String fTagName;
+    }
+
+    /**
+     * The namespace URI of namespace declaration attributes
+     */
+    private static final String NS_XMLNS = XMLConstants.XMLNS_ATTRIBUTE_NS_URI;
+
+    /**
+     * Returns the full URL corresponding to the given namespace and local name
+     * (see {@link XMLUtil#getURL})
+     * 
+     * @param ns the namespace URI; it can be <code>null</code>
+     * @param name the local name
+     * @return the full URL
+     */
+    private static String getURL(String ns, String name) {
+        if (ns != null && ns.length() == 0) {
+            ns = null;
+        }
+        if (ns != null && !ns.endsWith("#") && !ns.endsWith("/")) {
+            ns += "#";
+        }
+        return ns != null ? ns + name : name;
+    }
+
+    /**
+     * Returns the qualified name corresponding to the given prefix and local
+     * name
+     * 
+     * @param prefix the prefix; it can be <code>null</code> or empty
+     * @param name the local name
+     * @return the qualified name
+     */
+    private static String getQName(String prefix, String name) {
+        return prefix != null && prefix.length() > 0
+            ? prefix + ":" + name
+            : name;
+    }
+
+    /**
+     * Stack of composite nodes
+     */
+    private List<CompositeFrame> fComposites = new ArrayList<CompositeFrame>();
+
+    /**
+     * Stack of opened elements
+     */
+    private List<ElementFrame> fElements = new ArrayList<ElementFrame>();
+
+    /**
+     * The factory of stream readers
+     */
+    private XMLInputFactory fInputFactory;
+
+    /**
+     * The registry used to define which elements correspond to widgets
+     */
+    private FieldInfoFactoryRegistry fRegistry;
+
+    /**
+     * The buffer accumulating the static text
+     */
+    private StringBuffer fText = new StringBuffer();
+
+    /**
+     * This constructor initializes the registry used to define which template
+     * elements correspond to widgets.
+     * 
+     * @param registry the registry of field wrapper factories
+     */
+    public StaxTemplateCompiler(FieldInfoFactoryRegistry registry) {
+        fRegistry = registry;
+        fInputFactory = XMLInputFactory.newInstance();
+        fInputFactory.setProperty(XMLInputFactory.IS_NAMESPACE_AWARE, true);
+        fInputFactory.setProperty(
+            XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES,
+            false);
+        fInputFactory.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+    }
+
+    /**
+     * Compiles all templates declared in the document read from the given
+     * stream
+     * 
+     * @param input the stream containing the template document
+     * @return a list of compiled templates
+     * @throws XMLStreamException if the document could not be read
+     */
+    public List<TemplateDefinition> compileTemplates(InputStream input)
+        throws XMLStreamException {
+        XMLStreamReader reader = fInputFactory.createXMLStreamReader(input);
+        try {
+            return compileTemplates(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Compiles all templates declared in the document read from the given
+     * reader
+     * 
+     * @param input the reader containing the template document
+     * @return a list of compiled templates
+     * @throws XMLStreamException if the document could not be read
+     */
+    public List<TemplateDefinition> compileTemplates(Reader input)
+        throws XMLStreamException {
+        XMLStreamReader reader = fInputFactory.createXMLStreamReader(input);
+        try {
+            return compileTemplates(reader);
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Compiles all templates declared in the document read by the given
+     * stream reader. Template declarations are expected as direct children of
+     * the document element.
+     * 
+     * @param reader the stream reader
+     * @return a list of compiled templates
+     * @throws XMLStreamException if the document could not be read
+     */
+    public List<TemplateDefinition> compileTemplates(XMLStreamReader reader)
+        throws XMLStreamException {
+        List<TemplateDefinition> result = new ArrayList<TemplateDefinition>();
+        String url = NS_TEMPLATES + "template";
+        int depth = 0;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+                String elementURL = getURL(reader.getNamespaceURI(), reader
+                    .getLocalName());
+                if (depth == 2 && url.equals(elementURL)) {
+                    Map<String, String> attributes = getAttributes(reader);
+                    String name = attributes.get(X_ATTR_NAME);
+                    ElementCache template = compileTemplate(reader);
+                    if (name != null) {
+                        result.add(new TemplateDefinition(
+                            name,
+                            template,
+                            attributes));
+                    }
+                    depth--;
+                }
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Compiles the template element on which the given reader is positioned.
+     * When this method returns the reader is positioned on the end of the
+     * template element.
+     * 
+     * @param reader the reader positioned on the start of a template element
+     * @return the cached template structure
+     * @throws XMLStreamException if the document could not be read
+     */
+    public ElementCache compileTemplate(XMLStreamReader reader)
+        throws XMLStreamException {
+        fComposites.clear();
+        fElements.clear();
+        fText.delete(0, fText.length());
+        CompositeFrame top = newCompositeFrame(null, reader);
+        fComposites.add(top);
+        startElement(reader);
+        while (!fElements.isEmpty()) {
+            int event = reader.next();
+            switch (event) {
+                case XMLStreamConstants.START_ELEMENT:
+                    startElement(reader);
+                    break;
+                case XMLStreamConstants.END_ELEMENT:
+                    endElement();
+                    break;
+                case XMLStreamConstants.CHARACTERS:
+                case XMLStreamConstants.CDATA:
+                case XMLStreamConstants.SPACE:
+                    XMLUtil.escape(reader.getText(), fText);
+                    break;
+            }
+        }
+        flushText();
+        fComposites.clear();
+        return top.newElementCache();
+    }
+
+    /**
+     * Finishes the current element
+     */
+    private void endElement() {
+        ElementFrame frame = fElements.remove(fElements.size() - 1);
+        if (frame.fDynamic) {
+            flushText();
+            CompositeFrame composite = fComposites
+                .remove(fComposites.size() - 1);
+            getPeek().fChildren.add(composite.newElementCache());
+        } else if (frame.fTagName != null) {
+            fText.append("</");
+            fText.append(frame.fTagName);
+            fText.append(">");
+        }
+    }
+
+    /**
+     * Adds the static text accumulated so far to the current composite node
+     */
+    private void flushText() {
+        if (fText.length() > 0) {
+            getPeek().fChildren.add(new TextCacheNode(fText.toString()));
+            fText.delete(0, fText.length());
+        }
+    }
+
+    /**
+     * Returns a map of all attributes of the current element (including
+     * namespace declarations) with the corresponding values. The keys are
+     * full URLs of attributes.
+     * 
+     * @param reader the stream reader positioned on a start element
+     * @return a map of attributes of the current element
+     */
+    private Map<String, String> getAttributes(XMLStreamReader reader) {
+        Map<String, String> result = new LinkedHashMap<String, String>();
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            String name = prefix != null && prefix.length() > 0
+                ? prefix
+                : "xmlns";
+            result.put(getURL(NS_XMLNS, name), reader.getNamespaceURI(i));
+        }
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            String url = getURL(reader.getAttributeNamespace(i), reader
+                .getAttributeLocalName(i));
+            result.put(url, reader.getAttributeValue(i));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the current composite node
+     * 
+     * @return the current composite node
+     */
+    private CompositeFrame getPeek() {
+        return fComposites.get(fComposites.size() - 1);
+    }
+
+    /**
+     * Creates a new composite frame for the current element
+     * 
+     * @param factory the field wrapper factory of the element
+     * @param reader the stream reader positioned on a start element
+     * @return a new composite frame
+     */
+    private CompositeFrame newCompositeFrame(
+        FieldInfoFactory factory,
+        XMLStreamReader reader) {
+        CompositeFrame frame = new CompositeFrame();
+        frame.fFactory = factory;
+        frame.fTagURI = getURL(reader.getNamespaceURI(), reader
+            .getLocalName());
+        Map<String, String> attributes = getAttributes(reader);
+        attributes.put(TAG_URI, frame.fTagURI);
+        frame.fAttributes = new AttributeTable(attributes);
+        return frame;
+    }
+
+    /**
+     * Serializes the opening tag of the current element in the same way as
+     * {@link XMLUtil#serializeOpenTag} does
+     * 
+     * @param reader the stream reader positioned on a start element
+     * @param buf the buffer where the tag is appended
+     */
+    private void serializeOpenTag(XMLStreamReader reader, StringBuffer buf) {
+        buf.append("<");
+        buf.append(getQName(reader.getPrefix(), reader.getLocalName()));
+        for (int i = 0; i < reader.getNamespaceCount(); i++) {
+            String prefix = reader.getNamespacePrefix(i);
+            buf.append(" ");
+            buf.append(getQName(
+                prefix != null && prefix.length() > 0 ? "xmlns" : null,
+                prefix != null && prefix.length() > 0 ? prefix : "xmlns"));
+            buf.append("='");
+            XMLUtil.escape(reader.getNamespaceURI(i), buf);
+            buf.append("'");
+        }
+        for (int i = 0; i < reader.getAttributeCount(); i++) {
+            buf.append(" ");
+            buf.append(getQName(reader.getAttributePrefix(i), reader
+                .getAttributeLocalName(i)));
+            buf.append("='");
+            XMLUtil.escape(reader.getAttributeValue(i), buf);
+            buf.append("'");
+        }
+        buf.append(">");
+    }
+
+    /**
+     * Starts a new element
+     * 
+     * @param reader the stream reader positioned on a start element
+     */
+    private void startElement(XMLStreamReader reader) {
+        String tagURI = getURL(reader.getNamespaceURI(), reader.getLocalName());
+        FieldInfoFactory factory = fRegistry.getFieldInfoFactoryNS(XMLUtil
+            .getNamespace(tagURI), XMLUtil.getLocalName(tagURI));
+        ElementFrame frame = new ElementFrame();
+        if (factory != null) {
+            flushText();
+            frame.fDynamic = true;
+            fComposites.add(newCompositeFrame(factory, reader));
+        } else if (!tagURI.startsWith(NS_TEMPLATES)) {
+            frame.fTagName = getQName(reader.getPrefix(), reader
+                .getLocalName());
+            serializeOpenTag(reader, fText);
+        }
+        fElements.add(frame);
+    }
+
+}
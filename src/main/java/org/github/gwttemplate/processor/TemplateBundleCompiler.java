@@ -0,0 +1,90 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.processor;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+
+import org.github.gwttemplate.templates.TemplateBundleWriter;
+
+/**
+ * This is a command-line tool compiling XML template documents into a
+ * template bundle (see {@link org.github.gwttemplate.templates.TemplateBundle})
+ * which can be loaded by the browser without XML parsing. Usage:
+ * 
+ * <pre>
+ * TemplateBundleCompiler [-tags uri1,uri2] output input1.xml [input2.xml...]
+ * </pre>
+ * <p>
+ * The <code>-tags</code> option declares URIs of additional widget tags
+ * registered by the application at runtime.
+ * </p>
+ * 
+ * 
+ */
+public class TemplateBundleCompiler {
+
+    /**
+     * The encoding of bundle files
+     */
+    public static final String ENCODING = "UTF-8";
+
+    /**
+     * Compiles template documents specified in the command line
+     * 
+     * @param args command-line arguments
+     * @throws Exception if templates could not be compiled
+     */
+    public static void main(String[] args) throws Exception {
+        int pos = 0;
+        String tags = null;
+        if (args.length > 1 && "-tags".equals(args[0])) {
+            tags = args[1];
+            pos = 2;
+        }
+        if (args.length - pos < 2) {
+            System.err.println("Usage: TemplateBundleCompiler "
+                + "[-tags uri1,uri2] output input1.xml [input2.xml...]");
+            System.exit(1);
+        }
+        StaxTemplateCompiler compiler = new StaxTemplateCompiler(
+            TemplateProcessor.newRegistry(tags));
+        TemplateBundleWriter bundle = new TemplateBundleWriter();
+        for (int i = pos + 1; i < args.length; i++) {
+            InputStream input = new FileInputStream(args[i]);
+            try {
+                List<TemplateDefinition> templates = compiler
+                    .compileTemplates(input);
+                for (TemplateDefinition template : templates) {
+                    bundle.addTemplate(
+                        template.getName(),
+                        template.getTemplate(),
+                        template.getAttributes());
+                }
+            } finally {
+                input.close();
+            }
+        }
+        Writer out = new OutputStreamWriter(
+            new FileOutputStream(args[pos]),
+            ENCODING);
+        try {
+            out.write(bundle.toBundle());
+        } finally {
+            out.close();
+        }
+    }
+
+}
@@ -0,0 +1,84 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.processor;
+
+import java.util.Map;
+
+import org.github.gwttemplate.templates.cache.CompositeCacheNode;
+
+/**
+ * This object contains a template compiled outside of the browser: the name of
+ * the template, the cached template structure and attributes of the template
+ * declaration.
+ * 
+ * 
+ */
+public class TemplateDefinition {
+
+    /**
+     * Attributes of the template declaration
+     */
+    private Map<String, String> fAttributes;
+
+    /**
+     * The name of the template
+     */
+    private String fName;
+
+    /**
+     * The cached template structure
+     */
+    private CompositeCacheNode fTemplate;
+
+    /**
+     * This constructor initializes internal fields
+     * 
+     * @param name the name of the template
+     * @param template the cached template structure
+     * @param attributes attributes of the template declaration
+     */
+    public TemplateDefinition(
+        String name,
+        CompositeCacheNode template,
+        Map<String, String> attributes) {
+        fName = name;
+        fTemplate = template;
+        fAttributes = attributes;
+    }
+
+    /**
+     * Returns attributes of the template declaration
+     * 
+     * @return attributes of the template declaration
+     */
+    public Map<String, String> getAttributes() {
+        return fAttributes;
+    }
+
+    /**
+     * Returns the name of the template
+     * 
+     * @return the name of the template
+     */
+    public String getName() {
+        return fName;
+    }
+
+    /**
+     * Returns the cached template structure
+     * 
+     * @return the cached template structure
+     */
+    public CompositeCacheNode getTemplate() {
+        return fTemplate;
+    }
+
+}
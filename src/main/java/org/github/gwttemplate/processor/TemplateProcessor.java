@@ -0,0 +1,264 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.processor;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.RoundEnvironment;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.JavaFileObject;
+import javax.tools.StandardLocation;
+
+import org.github.gwttemplate.templates.FieldInfoFactory;
+import org.github.gwttemplate.templates.FieldInfoFactoryRegistry;
+import org.github.gwttemplate.templates.TemplateSource;
+import org.github.gwttemplate.templates.XMLUtil;
+
+/**
+ * This annotation processor compiles XML templates declared by the
+ * {@link TemplateSource} annotation into Java classes implementing the
+ * {@link org.github.gwttemplate.templates.TemplateProvider} interface. The
+ * generated classes register the same cached templates in the
+ * {@link org.github.gwttemplate.templates.TemplatePanelBuilder} as the ones
+ * built from XML documents in the browser, so panels built from them contain
+ * identical fields.
+ * <p>
+ * Elements are recognized as widgets using the default
+ * {@link FieldInfoFactoryRegistry}. URIs of additional widget tags registered
+ * by the application at runtime should be declared with the
+ * <code>-Agwttemplates.tags=uri1,uri2</code> option. The processor should be
+ * activated explicitly, for example with
+ * <code>-processor org.github.gwttemplate.processor.TemplateProcessor</code>.
+ * </p>
+ * 
+ * 
+ */
+public class TemplateProcessor extends AbstractProcessor {
+
+    /**
+     * The name of the option containing a comma-separated list of URIs of
+     * additional widget tags
+     */
+    public static final String OPTION_TAGS = "gwttemplates.tags";
+
+    /**
+     * The suffix of names of generated classes
+     */
+    public static final String SUFFIX = "_TemplateProvider";
+
+    /**
+     * This factory is registered for additional widget tags; it is used only
+     * to mark elements as dynamic nodes at compile time.
+     */
+    private static final FieldInfoFactory TAG_MARKER = new FieldInfoFactory() {
+        public org.github.gwttemplate.templates.FieldInfo<?> newFieldInfo(
+            org.github.gwttemplate.templates.TemplateTopPanel panel,
+            java.util.Map<String, String> attributes) {
+            return null;
+        }
+    };
+
+    /**
+     * Generates the provider for the given annotated type
+     * 
+     * @param type the annotated type
+     * @param source the annotation
+     * @throws Exception if templates could not be read or compiled
+     */
+    private void generate(TypeElement type, TemplateSource source)
+        throws Exception {
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(
+            type);
+        String packageName = pkg.isUnnamed() ? "" : pkg
+            .getQualifiedName()
+            .toString();
+        StaxTemplateCompiler compiler = new StaxTemplateCompiler(newRegistry());
+        List<TemplateDefinition> templates = new ArrayList<TemplateDefinition>();
+        for (String path : source.value()) {
+            List<TemplateDefinition> list = compileDocument(
+                compiler,
+                packageName,
+                path);
+            if (list == null) {
+                processingEnv.getMessager().printMessage(
+                    Diagnostic.Kind.ERROR,
+                    "Template document '" + path + "' was not found",
+                    type);
+                return;
+            }
+            templates.addAll(list);
+        }
+        String className = type.getSimpleName() + SUFFIX;
+        String qualifiedName = packageName.length() > 0 ? packageName
+            + "."
+            + className : className;
+        JavaFileObject file = processingEnv.getFiler().createSourceFile(
+            qualifiedName,
+            type);
+        PrintWriter out = new PrintWriter(file.openWriter());
+        try {
+            StringBuffer description = new StringBuffer();
+            for (String path : source.value()) {
+                if (description.length() > 0) {
+                    description.append(", ");
+                }
+                description.append(path);
+            }
+            new TemplateSourceWriter(out).write(
+                packageName,
+                className,
+                description.toString(),
+                templates);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @see javax.annotation.processing.AbstractProcessor#getSupportedAnnotationTypes()
+     */
+    @Override
+    public Set<String> getSupportedAnnotationTypes() {
+        return Collections.singleton(TemplateSource.class.getName());
+    }
+
+    /**
+     * @see javax.annotation.processing.AbstractProcessor#getSupportedOptions()
+     */
+    @Override
+    public Set<String> getSupportedOptions() {
+        return Collections.singleton(OPTION_TAGS);
+    }
+
+    /**
+     * @see javax.annotation.processing.AbstractProcessor#getSupportedSourceVersion()
+     */
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    /**
+     * Creates a new registry used to recognize widget elements
+     * 
+     * @return a new registry of field wrapper factories
+     */
+    private FieldInfoFactoryRegistry newRegistry() {
+        return newRegistry(processingEnv.getOptions().get(OPTION_TAGS));
+    }
+
+    /**
+     * Creates a new registry used to recognize widget elements. Additional
+     * widget tags are marked as dynamic elements.
+     * 
+     * @param tags a comma-separated list of URIs of additional widget tags; it
+     *        can be <code>null</code>
+     * @return a new registry of field wrapper factories
+     */
+    static FieldInfoFactoryRegistry newRegistry(String tags) {
+        FieldInfoFactoryRegistry registry = new FieldInfoFactoryRegistry();
+        if (tags != null) {
+            for (String tag : tags.split(",")) {
+                tag = tag.trim();
+                if (tag.length() > 0) {
+                    registry.addFieldInfoFactoryNS(
+                        XMLUtil.getNamespace(tag),
+                        XMLUtil.getLocalName(tag),
+                        TAG_MARKER);
+                }
+            }
+        }
+        return registry;
+    }
+
+    /**
+     * @see javax.annotation.processing.AbstractProcessor#process(java.util.Set,
+     *      javax.annotation.processing.RoundEnvironment)
+     */
+    @Override
+    public boolean process(
+        Set<? extends TypeElement> annotations,
+        RoundEnvironment roundEnv) {
+        for (Element element : roundEnv
+            .getElementsAnnotatedWith(TemplateSource.class)) {
+            if (!(element instanceof TypeElement))
+                continue;
+            TypeElement type = (TypeElement) element;
+            try {
+                generate(type, type.getAnnotation(TemplateSource.class));
+            } catch (Exception e) {
+                processingEnv.getMessager().printMessage(
+                    Diagnostic.Kind.ERROR,
+                    "Templates could not be compiled: " + e,
+                    type);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Reads and compiles the template document with the specified path. The
+     * document is searched in the source path and then in the class path.
+     * 
+     * @param compiler the compiler used to read the document
+     * @param packageName the package of the annotated type
+     * @param path the path of the document
+     * @return the list of compiled templates or <code>null</code> if the
+     *         document was not found
+     * @throws Exception if the document could not be parsed
+     */
+    private List<TemplateDefinition> compileDocument(
+        StaxTemplateCompiler compiler,
+        String packageName,
+        String path) throws Exception {
+        String pkg = packageName;
+        String name = path;
+        if (path.startsWith("/")) {
+            pkg = "";
+            name = path.substring(1);
+        }
+        Filer filer = processingEnv.getFiler();
+        StandardLocation[] locations = {
+            StandardLocation.SOURCE_PATH,
+            StandardLocation.CLASS_PATH };
+        for (StandardLocation location : locations) {
+            InputStream input;
+            try {
+                FileObject file = filer.getResource(location, pkg, name);
+                input = file.openInputStream();
+            } catch (IOException e) {
+                continue;
+            } catch (IllegalArgumentException e) {
+                continue;
+            }
+            try {
+                return compiler.compileTemplates(input);
+            } finally {
+                input.close();
+            }
+        }
+        return null;
+    }
+
+}
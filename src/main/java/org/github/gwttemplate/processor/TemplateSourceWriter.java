@@ -0,0 +1,326 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.processor;
+
+import java.io.PrintWriter;
+import java.util.List;
+import java.util.Map;
+
+import org.github.gwttemplate.templates.AttributeTable;
+import org.github.gwttemplate.templates.ElementCache;
+import org.github.gwttemplate.templates.cache.CacheNode;
+import org.github.gwttemplate.templates.cache.TextCacheNode;
+
+/**
+ * This writer generates the Java source of a
+ * {@link org.github.gwttemplate.templates.TemplateProvider} registering the
+ * given compiled templates. The generated code re-creates the cached template
+ * structures directly (static HTML constants and {@link ElementCache} nodes
+ * with their attribute tables) so no XML is downloaded or parsed in the
+ * browser.
+ * 
+ * 
+ */
+public class TemplateSourceWriter {
+
+    /**
+     * The maximal number of characters in one string literal; longer texts
+     * are split into multiple literals to respect the limits of the class
+     * file format.
+     */
+    private static final int MAX_LITERAL_LENGTH = 8192;
+
+    /**
+     * Appends the given string as a Java string literal to the buffer
+     * 
+     * @param str the string to append
+     * @param buf the buffer where the literal is appended
+     */
+    private static void appendLiteral(String str, StringBuffer buf) {
+        if (str == null) {
+            buf.append("null");
+            return;
+        }
+        buf.append('"');
+        for (int i = 0; i < str.length(); i++) {
+            char ch = str.charAt(i);
+            switch (ch) {
+                case '"':
+                    buf.append("\\\"");
+                    break;
+                case '\\':
+                    buf.append("\\\\");
+                    break;
+                case '\n':
+                    buf.append("\\n");
+                    break;
+                case '\r':
+                    buf.append("\\r");
+                    break;
+                case '\t':
+                    buf.append("\\t");
+                    break;
+                default:
+                    if (ch < 0x20 || ch > 0x7E) {
+                        String hex = Integer.toHexString(ch);
+                        buf.append("\\u");
+                        for (int j = hex.length(); j < 4; j++) {
+                            buf.append('0');
+                        }
+                        buf.append(hex);
+                    } else {
+                        buf.append(ch);
+                    }
+                    break;
+            }
+        }
+        buf.append('"');
+    }
+
+    /**
+     * The number of generated node methods
+     */
+    private int fNodeCount;
+
+    /**
+     * The output writer
+     */
+    private PrintWriter fOut;
+
+    /**
+     * This constructor initializes the output writer
+     * 
+     * @param out the writer used to write the generated source
+     */
+    public TemplateSourceWriter(PrintWriter out) {
+        fOut = out;
+    }
+
+    /**
+     * Appends the expression creating the given attribute table
+     * 
+     * @param table the table to serialize
+     * @param buf the buffer where the expression is appended
+     * @param indent the indentation of new lines
+     */
+    private void appendAttributes(
+        AttributeTable table,
+        StringBuffer buf,
+        String indent) {
+        buf.append("new String[] {");
+        for (int i = 0; i < table.size(); i++) {
+            buf.append(i > 0 ? ",\n" : "\n").append(indent).append("    ");
+            appendLiteral(table.getKey(i), buf);
+        }
+        buf.append(" },\n").append(indent).append("new String[] {");
+        for (int i = 0; i < table.size(); i++) {
+            buf.append(i > 0 ? ",\n" : "\n").append(indent).append("    ");
+            appendLiteral(table.getValue(i), buf);
+        }
+        buf.append(" }");
+    }
+
+    /**
+     * Appends the expression creating the given cache node. Text nodes are
+     * created in place; each element is created by its own method (see
+     * {@link #writeNode(ElementCache, boolean)}), so the size of generated
+     * methods does not depend on the size of templates.
+     * 
+     * @param node the node to serialize
+     * @param top if this flag is <code>true</code> then the node is the
+     *        topmost node of a template
+     * @param buf the buffer where the expression is appended
+     * @param indent the indentation of new lines
+     */
+    private void appendNode(
+        CacheNode node,
+        boolean top,
+        StringBuffer buf,
+        String indent) {
+        if (node instanceof TextCacheNode) {
+            String text = ((TextCacheNode) node).getText();
+            buf.append("text(");
+            for (int i = 0; i < text.length(); i += MAX_LITERAL_LENGTH) {
+                if (i > 0) {
+                    buf.append(",\n").append(indent).append("    ");
+                }
+                int end = Math.min(text.length(), i + MAX_LITERAL_LENGTH);
+                appendLiteral(text.substring(i, end), buf);
+            }
+            buf.append(")");
+        } else {
+            String method = writeNode((ElementCache) node, top);
+            buf.append(method).append("(b)");
+        }
+    }
+
+    /**
+     * Writes the source of a class registering the given templates
+     * 
+     * @param packageName the package of the generated class
+     * @param className the simple name of the generated class
+     * @param source a description of the source of the templates
+     * @param templates the templates to register
+     */
+    public void write(
+        String packageName,
+        String className,
+        String source,
+        List<TemplateDefinition> templates) {
+        if (packageName != null && packageName.length() > 0) {
+            fOut.println("package " + packageName + ";");
+            fOut.println();
+        }
+        fOut.println("import java.util.HashMap;");
+        fOut.println("import java.util.Map;");
+        fOut.println();
+        fOut.println("import org.github.gwttemplate.templates.AttributeTable;");
+        fOut.println("import org.github.gwttemplate.templates.ElementCache;");
+        fOut
+            .println("import org.github.gwttemplate.templates.FieldInfoFactory;");
+        fOut
+            .println("import org.github.gwttemplate.templates.TemplatePanelBuilder;");
+        fOut
+            .println("import org.github.gwttemplate.templates.TemplateProvider;");
+        fOut
+            .println("import org.github.gwttemplate.templates.cache.CacheNode;");
+        fOut
+            .println("import org.github.gwttemplate.templates.cache.TextCacheNode;");
+        fOut.println();
+        fOut.println("/**");
+        fOut.println(" * Templates compiled from " + source + ".");
+        fOut.println(" * This class is generated; do not modify it.");
+        fOut.println(" */");
+        fOut.println("public class "
+            + className
+            + " implements TemplateProvider {");
+        fOut.println();
+        fOut.println("    private static ElementCache field(");
+        fOut.println("        TemplatePanelBuilder b,");
+        fOut.println("        String tagURI,");
+        fOut.println("        String[] keys,");
+        fOut.println("        String[] values,");
+        fOut.println("        CacheNode... children) {");
+        fOut.println("        FieldInfoFactory factory = "
+            + "b.getFieldInfoFactory(tagURI);");
+        fOut.println("        if (factory == null)");
+        fOut.println("            throw new IllegalStateException(");
+        fOut.println("                \"Widget tag '\" + tagURI + "
+            + "\"' is not registered\");");
+        fOut.println("        return new ElementCache(");
+        fOut.println("            factory,");
+        fOut.println("            tagURI,");
+        fOut.println("            new AttributeTable(keys, values),");
+        fOut.println("            children);");
+        fOut.println("    }");
+        fOut.println();
+        fOut.println("    private static TextCacheNode text(String... parts) {");
+        fOut.println("        if (parts.length == 1)");
+        fOut.println("            return new TextCacheNode(parts[0]);");
+        fOut.println("        StringBuffer buf = new StringBuffer();");
+        fOut.println("        for (String part : parts) {");
+        fOut.println("            buf.append(part);");
+        fOut.println("        }");
+        fOut.println("        return new TextCacheNode(buf.toString());");
+        fOut.println("    }");
+        fOut.println();
+        fOut.println("    private static ElementCache top(");
+        fOut.println("        TemplatePanelBuilder b,");
+        fOut.println("        String tagURI,");
+        fOut.println("        String[] keys,");
+        fOut.println("        String[] values,");
+        fOut.println("        CacheNode... children) {");
+        fOut.println("        return new ElementCache(");
+        fOut.println("            null,");
+        fOut.println("            tagURI,");
+        fOut.println("            new AttributeTable(keys, values),");
+        fOut.println("            children);");
+        fOut.println("    }");
+        int count = templates.size();
+        for (int i = 0; i < count; i++) {
+            writeTemplate(i, templates.get(i));
+        }
+        fOut.println();
+        fOut.println("    public void addTemplates(TemplatePanelBuilder b) {");
+        for (int i = 0; i < count; i++) {
+            fOut.println("        addTemplate" + i + "(b);");
+        }
+        fOut.println("    }");
+        fOut.println();
+        fOut.println("}");
+        fOut.flush();
+    }
+
+    /**
+     * Writes the method creating the given element with all its children;
+     * methods creating child elements are written first
+     * 
+     * @param node the element to write
+     * @param top if this flag is <code>true</code> then the node is the
+     *        topmost node of a template
+     * @return the name of the written method
+     */
+    private String writeNode(ElementCache node, boolean top) {
+        String method = "node" + fNodeCount++;
+        String indent = "            ";
+        StringBuffer buf = new StringBuffer();
+        buf.append("        return ");
+        buf.append(top ? "top(b, " : "field(b, ");
+        appendLiteral(node.tagURI, buf);
+        buf.append(",\n").append(indent);
+        appendAttributes(node.attributes, buf, indent);
+        for (CacheNode child : node) {
+            buf.append(",\n").append(indent);
+            appendNode(child, false, buf, indent);
+        }
+        buf.append(");\n");
+        fOut.println();
+        fOut.println("    private static ElementCache "
+            + method
+            + "(TemplatePanelBuilder b) {");
+        fOut.print(buf);
+        fOut.println("    }");
+        return method;
+    }
+
+    /**
+     * Writes the method registering the given template
+     * 
+     * @param index the index of the template
+     * @param template the template to write
+     */
+    private void writeTemplate(int index, TemplateDefinition template) {
+        StringBuffer buf = new StringBuffer();
+        buf.append("\n");
+        buf.append("    private static void addTemplate");
+        buf.append(index);
+        buf.append("(TemplatePanelBuilder b) {\n");
+        buf.append("        Map<String, String> attributes = ");
+        buf.append("new HashMap<String, String>();\n");
+        for (Map.Entry<String, String> entry : template
+            .getAttributes()
+            .entrySet()) {
+            buf.append("        attributes.put(");
+            appendLiteral(entry.getKey(), buf);
+            buf.append(", ");
+            appendLiteral(entry.getValue(), buf);
+            buf.append(");\n");
+        }
+        buf.append("        b.addTemplate(");
+        appendLiteral(template.getName(), buf);
+        buf.append(", ");
+        appendNode(template.getTemplate(), true, buf, "            ");
+        buf.append(", attributes);\n");
+        buf.append("    }\n");
+        fOut.print(buf);
+    }
+
+}
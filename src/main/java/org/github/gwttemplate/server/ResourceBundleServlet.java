@@ -0,0 +1,245 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.server;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.io.Reader;
+
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+/**
+ * This servlet returns several resources of the web application in one
+ * response. It is the server side of the
+ * <code>org.github.gwttemplate.commons.io.ResourceBundleLoader</code> class.
+ * URLs of resources are given by the repeated <code>r</code> request
+ * parameter; each resource is written as:
+ * 
+ * <pre>
+ * statusCode ' ' length '\n' text
+ * </pre>
+ * 
+ * where the length is the number of characters of the text. Resources which
+ * are not found (or are not accessible) are returned with the 404 status code
+ * and an empty text.
+ * <p>
+ * Supported initialization parameters:
+ * </p>
+ * <ul>
+ * <li><code>maxResources</code> - the maximal number of resources in one
+ * request (100 by default)</li>
+ * <li><code>encoding</code> - the encoding of resources (UTF-8 by default)</li>
+ * </ul>
+ * 
+ * 
+ */
+public class ResourceBundleServlet extends HttpServlet {
+
+    /**
+     * The default encoding of resources
+     */
+    public static final String DEFAULT_ENCODING = "UTF-8";
+
+    /**
+     * The default maximal number of resources in one request
+     */
+    public static final int DEFAULT_MAX_RESOURCES = 100;
+
+    /**
+     * The name of the request parameter containing URLs of resources
+     */
+    public static final String PARAM_RESOURCE = "r";
+
+    private static final long serialVersionUID = 1L;
+
+    /**
+     * The encoding of resources
+     */
+    private String fEncoding = DEFAULT_ENCODING;
+
+    /**
+     * The maximal number of resources in one request
+     */
+    private int fMaxResources = DEFAULT_MAX_RESOURCES;
+
+    /**
+     * @see javax.servlet.http.HttpServlet#doGet(javax.servlet.http.HttpServletRequest,
+     *      javax.servlet.http.HttpServletResponse)
+     */
+    @Override
+    protected void doGet(HttpServletRequest req, HttpServletResponse resp)
+        throws ServletException,
+        IOException {
+        String[] urls = req.getParameterValues(PARAM_RESOURCE);
+        if (urls == null || urls.length == 0) {
+            resp.sendError(HttpServletResponse.SC_BAD_REQUEST);
+            return;
+        }
+        if (urls.length > fMaxResources) {
+            resp.sendError(
+                HttpServletResponse.SC_BAD_REQUEST,
+                "Too many resources");
+            return;
+        }
+        resp.setContentType("text/plain; charset=UTF-8");
+        resp.setHeader("Cache-Control", "no-cache");
+        PrintWriter out = resp.getWriter();
+        for (String url : urls) {
+            String path = getResourcePath(req, url);
+            String text = path != null ? readResource(path) : null;
+            if (text != null) {
+                writePart(out, HttpServletResponse.SC_OK, text);
+            } else {
+                writePart(out, HttpServletResponse.SC_NOT_FOUND, "");
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Transforms the given URL into a path of a resource of the web
+     * application. Paths going outside of the application or pointing to
+     * protected folders are rejected.
+     * 
+     * @param req the current request
+     * @param url the URL of the resource
+     * @return the path of the resource or <code>null</code> if the URL does not
+     *         correspond to an accessible resource
+     */
+    protected String getResourcePath(HttpServletRequest req, String url) {
+        String path = url;
+        int idx = path.indexOf("://");
+        if (idx >= 0) {
+            idx = path.indexOf('/', idx + 3);
+            if (idx < 0)
+                return null;
+            path = path.substring(idx);
+        }
+        idx = path.indexOf('?');
+        if (idx >= 0) {
+            path = path.substring(0, idx);
+        }
+        idx = path.indexOf('#');
+        if (idx >= 0) {
+            path = path.substring(0, idx);
+        }
+        String context = req.getContextPath();
+        if (context != null && context.length() > 0) {
+            if (!path.startsWith(context + "/"))
+                return null;
+            path = path.substring(context.length());
+        }
+        if (!isSafePath(path))
+            return null;
+        String top = path.substring(1);
+        idx = top.indexOf('/');
+        if (idx >= 0) {
+            top = top.substring(0, idx);
+        }
+        if ("WEB-INF".equalsIgnoreCase(top)
+            || "META-INF".equalsIgnoreCase(top))
+            return null;
+        return path;
+    }
+
+    /**
+     * Returns <code>true</code> if the given path is an absolute path which is
+     * not changed by the normalization made by the container. Paths with
+     * empty, "." or ".." segments, backslashes, escaped characters and path
+     * parameters are rejected, so the check of the first segment can not be
+     * bypassed (for example with "/./WEB-INF/web.xml" or "//WEB-INF/web.xml").
+     * 
+     * @param path the path to check
+     * @return <code>true</code> if the path can be checked as is
+     */
+    private boolean isSafePath(String path) {
+        if (!path.startsWith("/") || path.length() < 2)
+            return false;
+        for (int i = 0; i < path.length(); i++) {
+            char ch = path.charAt(i);
+            if (ch == '\\' || ch == '%' || ch == ';' || ch < ' ')
+                return false;
+        }
+        for (String segment : path.substring(1).split("/", -1)) {
+            if (segment.length() == 0
+                || ".".equals(segment)
+                || "..".equals(segment))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @see javax.servlet.GenericServlet#init()
+     */
+    @Override
+    public void init() throws ServletException {
+        String encoding = getInitParameter("encoding");
+        if (encoding != null) {
+            fEncoding = encoding;
+        }
+        String max = getInitParameter("maxResources");
+        if (max != null) {
+            try {
+                fMaxResources = Integer.parseInt(max.trim());
+            } catch (NumberFormatException e) {
+                throw new ServletException("Bad maxResources value: " + max);
+            }
+        }
+    }
+
+    /**
+     * Reads the resource with the specified path
+     * 
+     * @param path the path of the resource in the web application
+     * @return the content of the resource or <code>null</code> if the resource
+     *         was not found
+     * @throws IOException
+     */
+    protected String readResource(String path) throws IOException {
+        InputStream input = getServletContext().getResourceAsStream(path);
+        if (input == null)
+            return null;
+        try {
+            Reader reader = new InputStreamReader(input, fEncoding);
+            StringBuffer buf = new StringBuffer();
+            char[] array = new char[1024 * 8];
+            int len;
+            while ((len = reader.read(array)) > 0) {
+                buf.append(array, 0, len);
+            }
+            return buf.toString();
+        } finally {
+            input.close();
+        }
+    }
+
+    /**
+     * Writes one part of the response
+     * 
+     * @param out the writer of the response
+     * @param status the status code of the part
+     * @param text the text of the part
+     */
+    private void writePart(PrintWriter out, int status, String text) {
+        out.print(status);
+        out.print(' ');
+        out.print(text.length());
+        out.print('\n');
+        out.print(text);
+    }
+
+}
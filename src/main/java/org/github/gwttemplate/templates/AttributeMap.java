@@ -0,0 +1,294 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.templates;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * This is a view of the attributes of a cached template element. All read
+ * operations are delegated to the shared immutable {@link AttributeTable}
+ * resolved once when the template was compiled. Only attributes modified for
+ * an individual field are stored in this object. A <code>null</code> value
+ * is interpreted as a removed attribute.
+ * 
+ * 
+ */
+final class AttributeMap extends AbstractMap<String, String> {
+
+    /**
+     * An entry of this map; modifications of the value are written to the map
+     */
+    private class AttributeEntry extends SimpleEntry<String, String> {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * @param key the URL of the attribute
+         * @param value the value of the attribute
+         */
+        public AttributeEntry(String key, String value) {
+            super(key, value);
+        }
+
+        /**
+         * @see java.util.AbstractMap.SimpleEntry#setValue(java.lang.Object)
+         */
+        @Override
+        public String setValue(String value) {
+            super.setValue(value);
+            return put(getKey(), value);
+        }
+
+    }
+
+    /**
+     * The live set of entries of this map. Entries of the shared table (with
+     * overridden values) are returned first and then added attributes.
+     */
+    private class AttributeEntrySet
+        extends
+        AbstractSet<Map.Entry<String, String>> {
+
+        /**
+         * @see java.util.AbstractCollection#iterator()
+         */
+        @Override
+        public Iterator<Map.Entry<String, String>> iterator() {
+            return new Iterator<Map.Entry<String, String>>() {
+
+                /**
+                 * Keys of added attributes; it is initialized when all
+                 * entries of the table are returned
+                 */
+                private List<String> fAdded;
+
+                /**
+                 * The key of the last returned entry
+                 */
+                private String fLast;
+
+                /**
+                 * The next entry to return
+                 */
+                private Map.Entry<String, String> fNext;
+
+                /**
+                 * The position in the table or in the list of added keys
+                 */
+                private int fPos;
+
+                /**
+                 * Finds the next entry to return
+                 */
+                private void findNext() {
+                    while (fNext == null && fAdded == null) {
+                        if (fPos >= fTable.size()) {
+                            fAdded = getAddedKeys();
+                            fPos = 0;
+                            break;
+                        }
+                        String key = fTable.getKey(fPos++);
+                        String value = get(key);
+                        if (value != null) {
+                            fNext = new AttributeEntry(key, value);
+                        }
+                    }
+                    while (fNext == null && fPos < fAdded.size()) {
+                        String key = fAdded.get(fPos++);
+                        String value = get(key);
+                        if (value != null) {
+                            fNext = new AttributeEntry(key, value);
+                        }
+                    }
+                }
+
+                public boolean hasNext() {
+                    findNext();
+                    return fNext != null;
+                }
+
+                public Map.Entry<String, String> next() {
+                    findNext();
+                    if (fNext == null)
+                        throw new NoSuchElementException();
+                    Map.Entry<String, String> result = fNext;
+                    fNext = null;
+                    fLast = result.getKey();
+                    return result;
+                }
+
+                public void remove() {
+                    if (fLast == null)
+                        throw new IllegalStateException();
+                    AttributeMap.this.remove(fLast);
+                    fLast = null;
+                }
+
+            };
+        }
+
+        /**
+         * @see java.util.AbstractCollection#size()
+         */
+        @Override
+        public int size() {
+            return fSize;
+        }
+
+    }
+
+    /**
+     * Attributes modified for this field; it is <code>null</code> until the
+     * first modification of this map
+     */
+    private Map<String, String> fOverrides;
+
+    /**
+     * The number of attributes in this map
+     */
+    private int fSize;
+
+    /**
+     * The shared immutable attributes
+     */
+    private AttributeTable fTable;
+
+    /**
+     * This constructor initializes the shared attribute table
+     * 
+     * @param table the shared immutable table of attributes
+     */
+    public AttributeMap(AttributeTable table) {
+        fTable = table;
+        fSize = table.size();
+    }
+
+    /**
+     * @see java.util.AbstractMap#clear()
+     */
+    @Override
+    public void clear() {
+        fTable = AttributeTable.EMPTY;
+        fOverrides = null;
+        fSize = 0;
+    }
+
+    /**
+     * @see java.util.AbstractMap#containsKey(java.lang.Object)
+     */
+    @Override
+    public boolean containsKey(Object key) {
+        return get(key) != null;
+    }
+
+    /**
+     * Returns a live view of the entries of this map. Modifications made
+     * through the view (or through the key and value views derived from it)
+     * are written to this map.
+     * 
+     * @see java.util.AbstractMap#entrySet()
+     */
+    @Override
+    public Set<Map.Entry<String, String>> entrySet() {
+        return new AttributeEntrySet();
+    }
+
+    /**
+     * @see java.util.AbstractMap#get(java.lang.Object)
+     */
+    @Override
+    public String get(Object key) {
+        if (fOverrides != null && fOverrides.containsKey(key))
+            return fOverrides.get(key);
+        int idx = fTable.indexOf(key);
+        return idx >= 0 ? fTable.getValue(idx) : null;
+    }
+
+    /**
+     * Returns keys of attributes which are not defined in the shared table
+     * 
+     * @return keys of added attributes
+     */
+    private List<String> getAddedKeys() {
+        List<String> result = new ArrayList<String>();
+        if (fOverrides != null) {
+            for (Map.Entry<String, String> entry : fOverrides.entrySet()) {
+                if (entry.getValue() != null
+                    && fTable.indexOf(entry.getKey()) < 0) {
+                    result.add(entry.getKey());
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Returns the boolean value of the attribute with the specified URL
+     * 
+     * @param key the full URL of the attribute
+     * @param defaultValue the value returned if there is no such an attribute
+     * @return the boolean value of the attribute
+     */
+    public boolean getAsBoolean(String key, boolean defaultValue) {
+        if (fOverrides != null && fOverrides.containsKey(key)) {
+            String value = fOverrides.get(key);
+            return AttributeTable.toBoolean(value, defaultValue);
+        }
+        return fTable.getAsBoolean(key, defaultValue);
+    }
+
+    /**
+     * @see java.util.AbstractMap#put(java.lang.Object, java.lang.Object)
+     */
+    @Override
+    public String put(String key, String value) {
+        String old = get(key);
+        if (fOverrides == null) {
+            fOverrides = new HashMap<String, String>();
+        }
+        fOverrides.put(key, value);
+        if (old == null && value != null) {
+            fSize++;
+        } else if (old != null && value == null) {
+            fSize--;
+        }
+        return old;
+    }
+
+    /**
+     * @see java.util.AbstractMap#remove(java.lang.Object)
+     */
+    @Override
+    public String remove(Object key) {
+        String old = get(key);
+        if (old != null) {
+            put((String) key, null);
+        }
+        return old;
+    }
+
+    /**
+     * @see java.util.AbstractMap#size()
+     */
+    @Override
+    public int size() {
+        return fSize;
+    }
+
+}
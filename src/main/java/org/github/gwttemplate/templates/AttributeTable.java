@@ -0,0 +1,206 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.templates;
+
+import java.util.Map;
+
+/**
+ * This is an immutable compact storage of attributes. Attribute URLs and the
+ * corresponding values are stored in two parallel arrays. One instance of this
+ * type is created for each dynamic element of a template and it is shared by
+ * all fields created from this element (see {@link AttributeMap}). Boolean
+ * interpretations of values are computed once when the table is created.
+ * 
+ * 
+ */
+public final class AttributeTable {
+
+    /**
+     * The empty attribute table
+     */
+    public static final AttributeTable EMPTY = new AttributeTable(
+        new String[0],
+        new String[0]);
+
+    /**
+     * Returns the boolean value corresponding to the given string; if the
+     * given string is <code>null</code> then this method returns the
+     * specified default value.
+     * 
+     * @param value the string to transform
+     * @param defaultValue the default value
+     * @return the boolean value corresponding to the given string
+     */
+    public static boolean toBoolean(String value, boolean defaultValue) {
+        boolean result = defaultValue;
+        if (value != null) {
+            result = "true".equals(value)
+                || "yes".equals(value)
+                || "1".equals(value)
+                || "checked".equals(value);
+        }
+        return result;
+    }
+
+    /**
+     * Boolean interpretations of attribute values
+     */
+    private final boolean[] fBooleans;
+
+    /**
+     * Full URLs of attributes
+     */
+    private final String[] fKeys;
+
+    /**
+     * Attribute values; each value corresponds to the key with the same index
+     */
+    private final String[] fValues;
+
+    /**
+     * Creates a new table containing all entries from the given map
+     * 
+     * @param attributes the map of attribute URLs with the corresponding
+     *        values
+     */
+    public AttributeTable(Map<String, String> attributes) {
+        this(
+            attributes.keySet().toArray(new String[attributes.size()]),
+            attributes.values().toArray(new String[attributes.size()]));
+    }
+
+    /**
+     * Creates a new table with the given keys and values. Arrays should have
+     * the same length; they are used "as is" and should not be modified after
+     * the creation of this table.
+     * 
+     * @param keys full URLs of attributes
+     * @param values values of attributes
+     */
+    public AttributeTable(String[] keys, String[] values) {
+        fKeys = keys;
+        fValues = values;
+        fBooleans = new boolean[values.length];
+        for (int i = 0; i < values.length; i++) {
+            fBooleans[i] = toBoolean(values[i], false);
+        }
+    }
+
+    /**
+     * Two tables are equal if they contain the same attributes with the same
+     * values; the order of attributes is not significant.
+     * 
+     * @see java.lang.Object#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this)
+            return true;
+        if (!(obj instanceof AttributeTable))
+            return false;
+        AttributeTable table = (AttributeTable) obj;
+        if (table.size() != size())
+            return false;
+        for (int i = 0; i < fKeys.length; i++) {
+            int idx = table.indexOf(fKeys[i]);
+            if (idx < 0)
+                return false;
+            String value = table.getValue(idx);
+            if (value != null
+                ? !value.equals(fValues[i])
+                : fValues[i] != null)
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Returns the value of the attribute with the specified URL
+     * 
+     * @param key the full URL of the attribute
+     * @return the value of the attribute or <code>null</code> if there is no
+     *         such an attribute
+     */
+    public String get(String key) {
+        int idx = indexOf(key);
+        return idx >= 0 ? fValues[idx] : null;
+    }
+
+    /**
+     * Returns the boolean value of the attribute with the specified URL
+     * 
+     * @param key the full URL of the attribute
+     * @param defaultValue the value returned if there is no such an attribute
+     * @return the boolean value of the attribute
+     */
+    public boolean getAsBoolean(String key, boolean defaultValue) {
+        int idx = indexOf(key);
+        return idx >= 0 ? fBooleans[idx] : defaultValue;
+    }
+
+    /**
+     * Returns the URL of the attribute with the specified index
+     * 
+     * @param index the index of the attribute
+     * @return the URL of the attribute with the specified index
+     */
+    public String getKey(int index) {
+        return fKeys[index];
+    }
+
+    /**
+     * Returns the value of the attribute with the specified index
+     * 
+     * @param index the index of the attribute
+     * @return the value of the attribute with the specified index
+     */
+    public String getValue(int index) {
+        return fValues[index];
+    }
+
+    /**
+     * @see java.lang.Object#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        int result = 0;
+        for (int i = 0; i < fKeys.length; i++) {
+            int value = fValues[i] != null ? fValues[i].hashCode() : 0;
+            result += fKeys[i].hashCode() ^ value;
+        }
+        return result;
+    }
+
+    /**
+     * Returns the index of the attribute with the specified URL or -1 if there
+     * is no such an attribute
+     * 
+     * @param key the full URL of the attribute
+     * @return the index of the attribute with the specified URL
+     */
+    public int indexOf(Object key) {
+        for (int i = 0; i < fKeys.length; i++) {
+            if (fKeys[i].equals(key))
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the number of attributes in this table
+     * 
+     * @return the number of attributes in this table
+     */
+    public int size() {
+        return fKeys.length;
+    }
+
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.templates;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.github.gwttemplate.templates.cache.CacheProgram;
+import org.github.gwttemplate.templates.cache.CompositeCacheNode;
+
+/**
+ * This object contains all information computed once for a registered
+ * template: the flat program built from the cached template and the
+ * pre-merged HTML of all template scopes.
+ * 
+ * 
+ */
+class CompiledTemplate {
+
+    /**
+     * Instances of this type are used to accumulate the HTML of one scope
+     * while the program is traversed.
+     */
+    private static class ScopeBuffer {
+
+        /**
+         * The buffer accumulating the HTML of the scope
+         */
+        StringBuffer fBuf = new StringBuffer();
+
+        /**
+         * The number of slots in the scope
+         */
+        int fSlotCount;
+    }
+
+    /**
+     * The number of fields (dynamic nodes) of the template
+     */
+    private int fFieldCount;
+
+    /**
+     * The flat program corresponding to the template
+     */
+    private final CacheProgram fProgram;
+
+    /**
+     * Scopes of composite nodes; each scope has the same index as the
+     * corresponding node in the node table of the program.
+     */
+    private final TemplateScope[] fScopes;
+
+    /**
+     * This constructor compiles the given cached template
+     * 
+     * @param template the cached template to compile
+     */
+    public CompiledTemplate(CompositeCacheNode template) {
+        fProgram = CacheProgram.compile(template);
+        fScopes = new TemplateScope[fProgram.getNodes().length];
+        int[] codes = fProgram.getCodes();
+        int[] operands = fProgram.getOperands();
+        String[] texts = fProgram.getTexts();
+        List<ScopeBuffer> stack = new ArrayList<ScopeBuffer>();
+        ScopeBuffer peek = null;
+        for (int i = 0; i < codes.length; i++) {
+            switch (codes[i]) {
+                case CacheProgram.TEXT:
+                    peek.fBuf.append(texts[operands[i]]);
+                    break;
+                case CacheProgram.BEGIN_FIELD:
+                    if (peek != null) {
+                        TemplateScope.serializeSlot(peek.fSlotCount++, peek.fBuf);
+                        fFieldCount++;
+                    }
+                    peek = new ScopeBuffer();
+                    stack.add(peek);
+                    break;
+                case CacheProgram.END_FIELD:
+                    stack.remove(stack.size() - 1);
+                    fScopes[operands[i]] = new TemplateScope(
+                        peek.fBuf.toString(),
+                        peek.fSlotCount);
+                    peek = !stack.isEmpty()
+                        ? stack.get(stack.size() - 1)
+                        : null;
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of fields (dynamic nodes) of the template; the
+     * topmost node is not counted
+     * 
+     * @return the number of fields of the template
+     */
+    public int getFieldCount() {
+        return fFieldCount;
+    }
+
+    /**
+     * Returns the flat program corresponding to the template
+     * 
+     * @return the flat program corresponding to the template
+     */
+    public CacheProgram getProgram() {
+        return fProgram;
+    }
+
+    /**
+     * Returns the scope corresponding to the composite node with the
+     * specified index
+     * 
+     * @param index the index of the composite node in the program
+     * @return the scope corresponding to the node with the specified index
+     */
+    public TemplateScope getScope(int index) {
+        return fScopes[index];
+    }
+
+}
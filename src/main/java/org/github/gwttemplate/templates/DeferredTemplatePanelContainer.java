@@ -0,0 +1,45 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.templates;
+
+import com.google.gwt.user.client.Command;
+
+/**
+ * This interface is implemented by containers which can postpone the creation
+ * of their template panels until the content is shown for the first time (for
+ * example closed disclosure panels or hidden tabs). Fields in such a content
+ * are created and registered in the {@link TemplateTopPanel} but their widgets
+ * are not instantiated; values set for these fields are buffered until the
+ * content is materialized.
+ * 
+ * 
+ */
+public interface DeferredTemplatePanelContainer extends TemplatePanelContainer {
+
+    /**
+     * Returns <code>true</code> if the template panel of this container
+     * should be created only when the content is shown for the first time
+     * 
+     * @return <code>true</code> if the template panel should be deferred
+     */
+    boolean isTemplatePanelDeferred();
+
+    /**
+     * Sets the command used to build the template panel of this container.
+     * This command should be executed once, just before the content of this
+     * container is shown for the first time; it creates the panel and calls
+     * the {@link #setTemplatePanel(TemplatePanel)} method.
+     * 
+     * @param loader the command building the template panel
+     */
+    void setTemplatePanelLoader(Command loader);
+
+}
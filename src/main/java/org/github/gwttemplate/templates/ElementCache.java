@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.templates;
+
+import java.util.Map;
+
+import org.github.gwttemplate.templates.cache.CacheNode;
+import org.github.gwttemplate.templates.cache.CompositeCacheNode;
+
+import com.google.gwt.xml.client.Element;
+
+/**
+ * Instances of this type are used to keep in the cache elements defining
+ * widgets in templates. Such nodes are created by the
+ * {@link TemplatePanelBuilder} from XML elements or directly by code generated
+ * from templates at compile time. They are self-contained: only the tag URI,
+ * the attribute table and the field wrapper factory are kept.
+ * 
+ * 
+ */
+public class ElementCache extends CompositeCacheNode
+    implements
+    TemplateNamespaces {
+
+    /**
+     * Attributes of the cached element. This immutable table contains full
+     * URLs of attributes with the corresponding values and the URI of the
+     * element itself (the {@link TemplateNamespaces#TAG_URI} key). It is
+     * resolved only once when the template is compiled and it is shared by all
+     * fields created from this element.
+     */
+    public final AttributeTable attributes;
+
+    /**
+     * The field wrapper factory corresponding to the XML element; it is
+     * <code>null</code> for the topmost node of a template
+     */
+    public final FieldInfoFactory factory;
+
+    /**
+     * The full URI of the cached element
+     */
+    public final String tagURI;
+
+    /**
+     * The default constructor used to initialize the internal fields. The URI
+     * and attributes of the given XML element are copied into this node; no
+     * reference to the element itself is kept, so the source document can be
+     * garbage-collected once the template is built.
+     * 
+     * @param factory the field wrapper factory
+     * @param e the XML element to cache
+     */
+    public ElementCache(FieldInfoFactory factory, Element e) {
+        this.factory = factory;
+        this.tagURI = XMLUtil.getURL(e);
+        Map<String, String> attributes = XMLUtil.toParameters(e);
+        attributes.put(TAG_URI, tagURI);
+        this.attributes = new AttributeTable(attributes);
+    }
+
+    /**
+     * This constructor is used to create cached elements without XML
+     * documents (for example by code generated from templates at compile
+     * time).
+     * 
+     * @param factory the field wrapper factory
+     * @param tagURI the full URI of the element
+     * @param attributes the attributes of the element; this table should
+     *        contain the {@link TemplateNamespaces#TAG_URI} key
+     * @param children child nodes of this element
+     */
+    public ElementCache(
+        FieldInfoFactory factory,
+        String tagURI,
+        AttributeTable attributes,
+        CacheNode... children) {
+        this.factory = factory;
+        this.tagURI = tagURI;
+        this.attributes = attributes;
+        for (CacheNode child : children) {
+            addNode(child);
+        }
+    }
+
+    /**
+     * Two cached elements are equal if they have the same tag URI, the same
+     * attributes and equal children. Factories are compared only by their
+     * presence: a factory is defined by the tag URI in a given registry, so
+     * the same template compiled with different registries gives equal
+     * structures.
+     * 
+     * @see org.github.gwttemplate.templates.cache.CompositeCacheNode#equals(java.lang.Object)
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (obj == this)
+            return true;
+        if (!(obj instanceof ElementCache))
+            return false;
+        ElementCache node = (ElementCache) obj;
+        if ((factory == null) != (node.factory == null))
+            return false;
+        if (tagURI != null ? !tagURI.equals(node.tagURI) : node.tagURI != null)
+            return false;
+        if (attributes != null
+            ? !attributes.equals(node.attributes)
+            : node.attributes != null)
+            return false;
+        return super.equals(obj);
+    }
+
+    /**
+     * @see org.github.gwttemplate.templates.cache.CompositeCacheNode#hashCode()
+     */
+    @Override
+    public int hashCode() {
+        int result = super.hashCode();
+        result = 31 * result + (tagURI != null ? tagURI.hashCode() : 0);
+        result = 31 * result + (attributes != null ? attributes.hashCode() : 0);
+        return result;
+    }
+
+}
@@ -48,15 +48,38 @@ public abstract class FieldInfo<W extends Widget> implements Iterable<FieldInfo<
 	}
 
 	/**
-	 * Configuration attributes of this field
+	 * Configuration attributes of this field. For fields created from templates it is an {@link AttributeMap} sharing
+	 * the attribute table of the template element; only attributes modified for this field are stored separately.
 	 */
 	private Map<String, String> fAttributes;
 
+	/**
+	 * The enabled state set while the widget of this field was not created yet; it is <code>null</code> if the state
+	 * was not changed.
+	 */
+	private Boolean fBufferedEnabled;
+
+	/**
+	 * The value set while the widget of this field was not created yet
+	 */
+	private Object fBufferedValue;
+
 	/**
 	 * This list contains all children ({@link FieldInfo} instances)
 	 */
 	private List<FieldInfo<?>> fChildren;
 
+	/**
+	 * This flag is <code>true</code> if this field belongs to a template content which is not materialized yet (the
+	 * content of a closed disclosure panel or of a hidden tab).
+	 */
+	private boolean fDeferred;
+
+	/**
+	 * This flag is <code>true</code> if the {@link #fBufferedValue} field contains a value
+	 */
+	private boolean fHasBufferedValue;
+
 	/**
 	 * The name of this widget.
 	 */
@@ -121,12 +144,40 @@ public abstract class FieldInfo<W extends Widget> implements Iterable<FieldInfo<
 		return true;
 	}
 
+	/**
+	 * Changes the enabled state of this field. If the widget of a deferred field is not created yet then the state is
+	 * buffered and applied when the field is materialized.
+	 * 
+	 * @param enabled
+	 *            the enabled state to set
+	 */
+	void changeEnabled(boolean enabled) {
+		if (isBuffered()) {
+			fBufferedEnabled = enabled;
+		} else {
+			setEnabled(enabled);
+		}
+	}
+
 	/**
 	 * Cleans up all internal fields
 	 */
 	public void clear() {
 	}
 
+	/**
+	 * Cleans up this field. If the widget of a deferred field is not created yet then only the buffered value is
+	 * removed; the widget will be created in its initial state.
+	 */
+	void clearValue() {
+		if (isBuffered()) {
+			fBufferedValue = null;
+			fHasBufferedValue = false;
+		} else {
+			clear();
+		}
+	}
+
 	/**
 	 * This method transforms the given name of the field attribute into a name of the widget attribute. This method can
 	 * transform the full URL of the field attribute into a specific widget attribute name. If this method returns
@@ -173,12 +224,12 @@ public abstract class FieldInfo<W extends Widget> implements Iterable<FieldInfo<
 	 * @return a boolean value of the specified attributed
 	 */
 	public boolean getAttributeAsBoolean(String attributeURL, boolean defaultValue) {
-		String value = getAttribute(attributeURL);
-		boolean result = defaultValue;
-		if (value != null) {
-			result = "true".equals(value) || "yes".equals(value) || "1".equals(value) || "checked".equals(value);
+		if (fAttributes instanceof AttributeMap) {
+			// Boolean values of shared template attributes are already resolved
+			return ((AttributeMap) fAttributes).getAsBoolean(attributeURL, defaultValue);
 		}
-		return result;
+		String value = getAttribute(attributeURL);
+		return AttributeTable.toBoolean(value, defaultValue);
 	}
 
 	/**
@@ -288,10 +339,20 @@ public abstract class FieldInfo<W extends Widget> implements Iterable<FieldInfo<
 		if (fWidget == null) {
 			fWidget = newWidget();
 			initializeWidget(fWidget);
+			fPanel.indexWidget(this);
 		}
 		return fWidget;
 	}
 
+	/**
+	 * Returns <code>true</code> if the widget of this field was already created
+	 * 
+	 * @return <code>true</code> if the widget of this field was already created
+	 */
+	public boolean hasWidget() {
+		return fWidget != null;
+	}
+
 	/**
 	 * Returns the browser DOM element to which all attributes of the widget should be applied
 	 * 
@@ -322,6 +383,25 @@ public abstract class FieldInfo<W extends Widget> implements Iterable<FieldInfo<
 		}
 	}
 
+	/**
+	 * Returns <code>true</code> if values of this field are buffered: the field is deferred and its widget is not
+	 * created yet.
+	 * 
+	 * @return <code>true</code> if values of this field are buffered
+	 */
+	private boolean isBuffered() {
+		return fDeferred && fWidget == null;
+	}
+
+	/**
+	 * Returns <code>true</code> if this field belongs to a template content which is not materialized yet
+	 * 
+	 * @return <code>true</code> if this field is deferred
+	 */
+	public boolean isDeferred() {
+		return fDeferred;
+	}
+
 	/**
 	 * @see java.lang.Iterable#iterator()
 	 */
@@ -329,6 +409,28 @@ public abstract class FieldInfo<W extends Widget> implements Iterable<FieldInfo<
 		return fChildren != null ? fChildren.iterator() : new ArrayList<FieldInfo<?>>().iterator();
 	}
 
+	/**
+	 * This method is called when the template content containing this deferred field is materialized. It applies all
+	 * buffered values and states to the widget and notifies the owner panel.
+	 */
+	void materialize() {
+		if (!fDeferred)
+			return;
+		fDeferred = false;
+		if (fHasBufferedValue) {
+			Object value = fBufferedValue;
+			fBufferedValue = null;
+			fHasBufferedValue = false;
+			setValue(value);
+		}
+		if (fBufferedEnabled != null) {
+			boolean enabled = fBufferedEnabled.booleanValue();
+			fBufferedEnabled = null;
+			setEnabled(enabled);
+		}
+		fPanel.onFieldMaterialized(this);
+	}
+
 	/**
 	 * Creates and returns a new widget corresponding to the given XML element
 	 * 
@@ -336,6 +438,35 @@ public abstract class FieldInfo<W extends Widget> implements Iterable<FieldInfo<
 	 */
 	protected abstract W newWidget();
 
+	/**
+	 * Returns the value of this field. If the widget of a deferred field is not created yet then this method returns
+	 * the buffered value (if any).
+	 * 
+	 * @return the value of this field
+	 */
+	Object readValue() {
+		if (isBuffered() && fHasBufferedValue)
+			return fBufferedValue;
+		return getValue();
+	}
+
+	/**
+	 * Returns all values of this field. If the widget of a deferred field is not created yet then this method returns
+	 * a list containing the buffered value (if any).
+	 * 
+	 * @return a list of values of this field
+	 */
+	Collection<Object> readValues() {
+		if (isBuffered() && fHasBufferedValue) {
+			List<Object> values = new ArrayList<Object>();
+			if (fBufferedValue != null) {
+				values.add(fBufferedValue);
+			}
+			return values;
+		}
+		return getValues();
+	}
+
 	/**
 	 * This method is used to un-register this field wrapper from the owner panel.
 	 * 
@@ -355,11 +486,21 @@ public abstract class FieldInfo<W extends Widget> implements Iterable<FieldInfo<
 	public void setEnabled(boolean enabled) {
 		if (fChildren != null) {
 			for (FieldInfo<?> info : fChildren) {
-				info.setEnabled(enabled);
+				info.changeEnabled(enabled);
 			}
 		}
 	}
 
+	/**
+	 * Marks this field as a part of a template content which is not materialized yet.
+	 * 
+	 * @param deferred
+	 *            the deferred flag to set
+	 */
+	void setDeferred(boolean deferred) {
+		fDeferred = deferred;
+	}
+
 	/**
 	 * Sets the specified value in the controlled field
 	 * 
@@ -400,6 +541,23 @@ public abstract class FieldInfo<W extends Widget> implements Iterable<FieldInfo<
 		widget.setVisible(visible);
 	}
 
+	/**
+	 * Sets the specified value of this field. If the widget of a deferred field is not created yet then the value is
+	 * buffered and it is applied when the field is materialized; in this case the value is always accepted.
+	 * 
+	 * @param value
+	 *            the value to set
+	 * @return <code>true</code> if the specified value was accepted
+	 */
+	boolean writeValue(Object value) {
+		if (isBuffered()) {
+			fBufferedValue = value;
+			fHasBufferedValue = true;
+			return true;
+		}
+		return setValue(value);
+	}
+
 	/**
 	 * @see java.lang.Object#toString()
 	 */
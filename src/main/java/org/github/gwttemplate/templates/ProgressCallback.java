@@ -0,0 +1,33 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.templates;
+
+import com.google.gwt.user.client.rpc.AsyncCallback;
+
+/**
+ * This is an asynchronous callback notified about the progress of long
+ * operations executed in several steps (incremental compilation of templates,
+ * incremental building of panels...).
+ * 
+ * 
+ * @param <T> the type of the result of the operation
+ */
+public interface ProgressCallback<T> extends AsyncCallback<T> {
+
+    /**
+     * This method is called after each step of the operation
+     * 
+     * @param done the number of processed items
+     * @param total the total number of items to process
+     */
+    void onProgress(int done, int total);
+
+}
@@ -0,0 +1,79 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.templates;
+
+/**
+ * This class contains constants describing the compact serialized form of
+ * compiled templates ("template bundles"). A bundle contains all templates of
+ * a template document and can be loaded by a {@link TemplatePanelBuilder}
+ * without XML parsing (see {@link TemplatePanelBuilder#addTemplates(String)}).
+ * Bundles are created by the {@link TemplateBundleWriter} and they are read by
+ * the {@link TemplateBundleReader}.
+ * <p>
+ * A bundle is a text with the following structure:
+ * </p>
+ * 
+ * <pre>
+ * MAGIC '\n' stringCount '\n' (length ':' chars)* '\n' int (',' int)*
+ * </pre>
+ * <p>
+ * The first part is a table of all strings (texts, tag URIs, attribute names
+ * and values, template names); each string is prefixed by its length so
+ * strings are not escaped. The second part is the structure array:
+ * </p>
+ * 
+ * <pre>
+ * tableCount (size (key value)*)* templateCount (name table node)*
+ * node = TEXT text | ELEMENT tag table childCount node*
+ * </pre>
+ * <p>
+ * Keys, values, texts, tags and names are indexes in the string table; tables
+ * are indexes of shared attribute tables.
+ * </p>
+ * 
+ * 
+ */
+public final class TemplateBundle {
+
+    /**
+     * The structure code of cached elements
+     */
+    public static final int ELEMENT = 1;
+
+    /**
+     * The first line of all template bundles
+     */
+    public static final String MAGIC = "GWTTB1";
+
+    /**
+     * The structure code of static texts
+     */
+    public static final int TEXT = 0;
+
+    /**
+     * Returns <code>true</code> if the given text is a template bundle and
+     * <code>false</code> if it is something else (for example an XML
+     * document)
+     * 
+     * @param text the text to check
+     * @return <code>true</code> if the given text is a template bundle
+     */
+    public static boolean isBundle(String text) {
+        return text != null && text.startsWith(MAGIC + "\n");
+    }
+
+    /**
+     * This class should not be instantiated
+     */
+    private TemplateBundle() {
+    }
+
+}
@@ -0,0 +1,224 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.templates;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.github.gwttemplate.templates.cache.CacheNode;
+import org.github.gwttemplate.templates.cache.TextCacheNode;
+
+/**
+ * This class reads template bundles (see {@link TemplateBundle}) and registers
+ * all templates in a {@link TemplatePanelBuilder}. Bundles are decoded in one
+ * flat pass without XML parsing. Dynamic nodes are resolved using the field
+ * wrapper factories registered in the builder, so all widget tags used by the
+ * bundle should be registered before the bundle is read; bundles using
+ * unregistered tags are rejected. Templates of a rejected bundle are not
+ * registered.
+ * 
+ * 
+ */
+public class TemplateBundleReader {
+
+    /**
+     * The builder where templates are registered
+     */
+    private TemplatePanelBuilder fBuilder;
+
+    /**
+     * The current position in the structure array
+     */
+    private int fPos;
+
+    /**
+     * The structure array
+     */
+    private int[] fStructure;
+
+    /**
+     * The string table
+     */
+    private String[] fStrings;
+
+    /**
+     * Shared attribute tables
+     */
+    private AttributeTable[] fTables;
+
+    /**
+     * This constructor initializes the builder where templates are registered
+     * 
+     * @param builder the builder where templates are registered
+     */
+    public TemplateBundleReader(TemplatePanelBuilder builder) {
+        fBuilder = builder;
+    }
+
+    /**
+     * Returns the next value of the structure array
+     * 
+     * @return the next value of the structure array
+     */
+    private int next() {
+        if (fPos >= fStructure.length)
+            throw new IllegalArgumentException("Unexpected end of bundle");
+        return fStructure[fPos++];
+    }
+
+    /**
+     * Returns the next string referenced by the structure array
+     * 
+     * @return the next string
+     */
+    private String nextString() {
+        return fStrings[next()];
+    }
+
+    /**
+     * Returns the next attribute table referenced by the structure array
+     * 
+     * @return the next attribute table
+     */
+    private AttributeTable nextTable() {
+        return fTables[next()];
+    }
+
+    /**
+     * Reads all templates from the given bundle and registers them in the
+     * builder.
+     * 
+     * @param bundle the serialized bundle
+     * @return names of registered templates in the order of the bundle
+     * @throws IllegalArgumentException if the given text is not a valid
+     *         bundle
+     */
+    public List<String> read(String bundle) throws IllegalArgumentException {
+        if (!TemplateBundle.isBundle(bundle))
+            throw new IllegalArgumentException("Not a template bundle");
+        try {
+            int pos = TemplateBundle.MAGIC.length() + 1;
+            int end = bundle.indexOf('\n', pos);
+            fStrings = new String[Integer.parseInt(bundle.substring(pos, end))];
+            pos = end + 1;
+            for (int i = 0; i < fStrings.length; i++) {
+                end = bundle.indexOf(':', pos);
+                int len = Integer.parseInt(bundle.substring(pos, end));
+                pos = end + 1;
+                fStrings[i] = bundle.substring(pos, pos + len);
+                pos += len;
+            }
+            fStructure = readStructure(bundle, pos + 1);
+            fPos = 0;
+            fTables = new AttributeTable[next()];
+            for (int i = 0; i < fTables.length; i++) {
+                int size = next();
+                String[] keys = new String[size];
+                String[] values = new String[size];
+                for (int j = 0; j < size; j++) {
+                    keys[j] = nextString();
+                    values[j] = nextString();
+                }
+                fTables[i] = new AttributeTable(keys, values);
+            }
+            int count = next();
+            List<String> result = new ArrayList<String>();
+            List<ElementCache> templates = new ArrayList<ElementCache>();
+            List<Map<String, String>> attributeList = new ArrayList<Map<String, String>>();
+            for (int i = 0; i < count; i++) {
+                String name = nextString();
+                AttributeTable table = nextTable();
+                Map<String, String> attributes = new LinkedHashMap<String, String>();
+                for (int j = 0; j < table.size(); j++) {
+                    attributes.put(table.getKey(j), table.getValue(j));
+                }
+                result.add(name);
+                attributeList.add(attributes);
+                templates.add((ElementCache) readNode(true));
+            }
+            for (int i = 0; i < count; i++) {
+                fBuilder.addTemplate(
+                    result.get(i),
+                    templates.get(i),
+                    attributeList.get(i));
+            }
+            return result;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Bad template bundle: " + e);
+        } catch (IndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Bad template bundle: " + e);
+        } finally {
+            fStrings = null;
+            fStructure = null;
+            fTables = null;
+        }
+    }
+
+    /**
+     * Reads the next node of the structure array
+     * 
+     * @param top if this flag is <code>true</code> then the node is the
+     *        topmost node of a template
+     * @return the read node
+     */
+    private CacheNode readNode(boolean top) {
+        int code = next();
+        if (code == TemplateBundle.TEXT)
+            return new TextCacheNode(nextString());
+        if (code != TemplateBundle.ELEMENT)
+            throw new IllegalArgumentException("Bad node code: " + code);
+        String tagURI = nextString();
+        AttributeTable table = nextTable();
+        CacheNode[] children = new CacheNode[next()];
+        for (int i = 0; i < children.length; i++) {
+            children[i] = readNode(false);
+        }
+        FieldInfoFactory factory = null;
+        if (!top) {
+            factory = fBuilder.getFieldInfoFactory(tagURI);
+            if (factory == null)
+                throw new IllegalArgumentException("Widget tag '"
+                    + tagURI
+                    + "' is not registered");
+        }
+        return new ElementCache(factory, tagURI, table, children);
+    }
+
+    /**
+     * Parses the comma-separated structure array starting at the specified
+     * position of the given bundle
+     * 
+     * @param bundle the serialized bundle
+     * @param pos the start position of the structure array
+     * @return the structure array
+     */
+    private int[] readStructure(String bundle, int pos) {
+        int count = 1;
+        for (int i = pos; i < bundle.length(); i++) {
+            if (bundle.charAt(i) == ',') {
+                count++;
+            }
+        }
+        int[] result = new int[count];
+        for (int i = 0; i < count; i++) {
+            int end = bundle.indexOf(',', pos);
+            if (end < 0) {
+                end = bundle.length();
+            }
+            result[i] = Integer.parseInt(bundle.substring(pos, end).trim());
+            pos = end + 1;
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.templates;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.github.gwttemplate.templates.cache.CacheNode;
+import org.github.gwttemplate.templates.cache.CompositeCacheNode;
+import org.github.gwttemplate.templates.cache.TextCacheNode;
+
+/**
+ * This class serializes cached templates into the compact bundle format
+ * described in the {@link TemplateBundle} class. All strings and attribute
+ * tables are stored only once in the resulting bundle. This class does not
+ * depend on the browser so bundles can be created at build time or on the
+ * server.
+ * 
+ * 
+ */
+public class TemplateBundleWriter {
+
+    /**
+     * The structure array
+     */
+    private List<Integer> fStructure = new ArrayList<Integer>();
+
+    /**
+     * Serialized attribute tables (keys) with the corresponding indexes
+     * (values)
+     */
+    private Map<String, Integer> fTableIndexes = new HashMap<String, Integer>();
+
+    /**
+     * The structure of all attribute tables
+     */
+    private List<Integer> fTables = new ArrayList<Integer>();
+
+    /**
+     * The number of added templates
+     */
+    private int fTemplateCount;
+
+    /**
+     * Strings (keys) with the corresponding indexes in the string table
+     * (values)
+     */
+    private Map<String, Integer> fStringIndexes = new HashMap<String, Integer>();
+
+    /**
+     * The string table
+     */
+    private List<String> fStrings = new ArrayList<String>();
+
+    /**
+     * Adds a new template to the bundle. The topmost node and all dynamic
+     * nodes of the given structure should be {@link ElementCache} instances.
+     * 
+     * @param templateName the name of the template
+     * @param template the cached template
+     * @param attributes attributes of the template; it can be
+     *        <code>null</code>
+     */
+    public void addTemplate(
+        String templateName,
+        CompositeCacheNode template,
+        Map<String, String> attributes) {
+        fStructure.add(getStringIndex(templateName));
+        AttributeTable table = attributes != null ? new AttributeTable(
+            attributes) : AttributeTable.EMPTY;
+        fStructure.add(getTableIndex(table));
+        writeNode(template);
+        fTemplateCount++;
+    }
+
+    /**
+     * Returns the index of the given string in the string table; new strings
+     * are added to the table
+     * 
+     * @param str the string
+     * @return the index of the string in the string table
+     */
+    private int getStringIndex(String str) {
+        Integer idx = fStringIndexes.get(str);
+        if (idx == null) {
+            idx = fStrings.size();
+            fStrings.add(str);
+            fStringIndexes.put(str, idx);
+        }
+        return idx;
+    }
+
+    /**
+     * Returns the index of the given attribute table; new tables are added to
+     * the bundle
+     * 
+     * @param table the attribute table
+     * @return the index of the attribute table
+     */
+    private int getTableIndex(AttributeTable table) {
+        int[] entries = new int[table.size() * 2];
+        StringBuffer key = new StringBuffer();
+        for (int i = 0; i < table.size(); i++) {
+            entries[i * 2] = getStringIndex(table.getKey(i));
+            entries[i * 2 + 1] = getStringIndex(table.getValue(i));
+            key.append(entries[i * 2]);
+            key.append(",");
+            key.append(entries[i * 2 + 1]);
+            key.append(",");
+        }
+        Integer idx = fTableIndexes.get(key.toString());
+        if (idx == null) {
+            idx = fTableIndexes.size();
+            fTableIndexes.put(key.toString(), idx);
+            fTables.add(table.size());
+            for (int entry : entries) {
+                fTables.add(entry);
+            }
+        }
+        return idx;
+    }
+
+    /**
+     * Returns the serialized bundle containing all added templates
+     * 
+     * @return the serialized bundle
+     */
+    public String toBundle() {
+        StringBuffer buf = new StringBuffer();
+        buf.append(TemplateBundle.MAGIC);
+        buf.append("\n");
+        buf.append(fStrings.size());
+        buf.append("\n");
+        for (String str : fStrings) {
+            buf.append(str.length());
+            buf.append(":");
+            buf.append(str);
+        }
+        buf.append("\n");
+        buf.append(fTableIndexes.size());
+        for (int value : fTables) {
+            buf.append(",");
+            buf.append(value);
+        }
+        buf.append(",");
+        buf.append(fTemplateCount);
+        for (int value : fStructure) {
+            buf.append(",");
+            buf.append(value);
+        }
+        return buf.toString();
+    }
+
+    /**
+     * Appends the structure of the given node to the structure array
+     * 
+     * @param node the node to write
+     */
+    private void writeNode(CacheNode node) {
+        if (node instanceof TextCacheNode) {
+            fStructure.add(TemplateBundle.TEXT);
+            fStructure.add(getStringIndex(((TextCacheNode) node).getText()));
+        } else if (node instanceof ElementCache) {
+            ElementCache e = (ElementCache) node;
+            fStructure.add(TemplateBundle.ELEMENT);
+            fStructure.add(getStringIndex(e.tagURI));
+            fStructure.add(getTableIndex(e.attributes));
+            int pos = fStructure.size();
+            fStructure.add(0);
+            int count = 0;
+            for (CacheNode child : e) {
+                writeNode(child);
+                count++;
+            }
+            fStructure.set(pos, count);
+        } else {
+            throw new IllegalArgumentException("Unsupported cache node: "
+                + node);
+        }
+    }
+
+}
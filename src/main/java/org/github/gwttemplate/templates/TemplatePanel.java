@@ -1,7 +1,6 @@
 package org.github.gwttemplate.templates;
 
-import java.util.Map;
-
+import com.google.gwt.dom.client.NodeList;
 import com.google.gwt.user.client.DOM;
 import com.google.gwt.user.client.Element;
 import com.google.gwt.user.client.ui.ComplexPanel;
@@ -30,74 +29,130 @@ public class TemplatePanel extends Composite {
         }
 
         /**
-         * Sets the internal HTML and replace all widget placeholders by the
-         * corresponding widgets. The given HTML can contain HTML elements
-         * marked by unique identifiers; If for such elements there are
-         * corresponding widgets in the given map then these elements will be
-         * replaced by widgets.
+         * Sets the pre-merged HTML of the given scope and replaces all slot
+         * elements by widgets of the corresponding fields.
          * 
-         * @param html the HTML to set; this HTML contains placeholders marked
-         *        by unique identifiers; these placeholders will be replaced by
-         *        the corresponding widgets
-         * @param fieldInfoMap this map contains element identifiers and the
-         *        corresponding to them {@link FieldInfo} objects; these field
-         *        info objects are used to instantiate widgets which are
-         *        inserted in the content instead placeholders
+         * @param scope the pre-merged HTML of a template scope
+         * @param slots fields corresponding to slots of the scope; if a slot
+         *        has no field then the slot element is just removed
+         * @param clone if this flag is <code>true</code> then the content is
+         *        copied from the prototype element of the scope instead of
+         *        parsing the HTML
          */
         public void setPanelContent(
-            String html,
-            Map<String, FieldInfo<?>> fieldInfoMap) {
-            if (html != null && !"".equals(html)) {
-                if (fieldInfoMap == null || fieldInfoMap.isEmpty()) {
-                    DOM.setInnerHTML(getElement(), html);
-                } else {
-                    DOM.setInnerHTML(getElement(), html);
-                    if (fieldInfoMap != null && !fieldInfoMap.isEmpty()) {
-                        setWidgets(getElement(), fieldInfoMap);
+            TemplateScope scope,
+            FieldInfo<?>[] slots,
+            boolean clone) {
+            setPanelHtml(scope, clone);
+            if (scope.getSlotCount() > 0) {
+                setWidgets(getElement(), slots);
+            }
+        }
+
+        /**
+         * Sets the pre-merged HTML of the given scope without binding widgets
+         * and returns slot elements indexed by slots.
+         * 
+         * @param scope the pre-merged HTML of a template scope
+         * @param clone if this flag is <code>true</code> then the content is
+         *        copied from the prototype element of the scope instead of
+         *        parsing the HTML
+         * @return slot elements; each element has the same index as the
+         *         corresponding slot
+         */
+        public com.google.gwt.dom.client.Element[] setPanelHtml(
+            TemplateScope scope,
+            boolean clone) {
+            Element elem = getElement();
+            if (clone) {
+                Element content = scope.newContent();
+                DOM.setInnerHTML(elem, "");
+                Element child = DOM.getFirstChild(content);
+                while (child != null) {
+                    Element next = DOM.getNextSibling(child);
+                    DOM.appendChild(elem, child);
+                    child = next;
+                }
+            } else {
+                DOM.setInnerHTML(elem, scope.getHtml());
+            }
+            com.google.gwt.dom.client.Element[] result = new com.google.gwt.dom.client.Element[scope
+                .getSlotCount()];
+            if (result.length > 0) {
+                NodeList<com.google.gwt.dom.client.Element> list = getSlotElements(elem);
+                for (int i = 0; i < list.getLength(); i++) {
+                    com.google.gwt.dom.client.Element marker = list.getItem(i);
+                    int slot = TemplateScope.getSlotIndex(marker
+                        .getAttribute(TemplateScope.SLOT_ATTRIBUTE));
+                    if (slot >= 0 && slot < result.length) {
+                        result[slot] = marker;
                     }
                 }
             }
+            return result;
         }
 
         /**
-         * Replace DOM elements by the corresponding widgets defined in the
-         * specified field info map;
+         * Replaces the given slot element by the widget of the specified field
+         * 
+         * @param marker the slot element
+         * @param field the field corresponding to the slot; if it is
+         *        <code>null</code> then the slot element is just removed
+         */
+        public void setSlotWidget(
+            com.google.gwt.dom.client.Element marker,
+            FieldInfo<?> field) {
+            com.google.gwt.dom.client.Element parent = marker
+                .getParentElement();
+            if (parent == null)
+                return;
+            if (field != null) {
+                Widget widget = field.getWidget();
+                widget.removeFromParent();
+                getChildren().add(widget);
+                parent.insertBefore(widget.getElement(), marker);
+                adopt(widget);
+            }
+            // Removes the slot element
+            parent.removeChild(marker);
+        }
+
+        /**
+         * Replace slot elements by widgets of the corresponding fields. Slot
+         * elements are found with one selector query so the cost of this
+         * method depends only on the number of slots and not on the size of
+         * the HTML.
          * 
          * @param elem the top element
-         * @param fieldInfoMap this map contains element ids and the
-         *        corresponding {@link FieldInfo} objects used to get widgets to
-         *        insert in the panel
+         * @param slots fields corresponding to slot indexes
          */
-        private void setWidgets(
-            Element elem,
-            Map<String, FieldInfo<?>> fieldInfoMap) {
-            Element child = DOM.getFirstChild(elem);
-            while (child != null) {
-                String id = DOM.getElementProperty(child, "id");
-                Element next = DOM.getNextSibling(child);
-                FieldInfo<?> field = id != null ? fieldInfoMap.get(id) : null;
-                if (field != null) {
-                    // The child element is a marker element; it will be
-                    // replaced by the corresponding widget
-                    Widget widget = field.getWidget();
-                    // Detach new child.
-                    widget.removeFromParent();
-                    // Logical attach.
-                    getChildren().add(widget);
-                    // Physical attach.
-                    DOM.insertBefore(elem, widget.getElement(), child);
-                    // Adopt.
-                    adopt(widget);
-                    // Removes the marker element
-                    DOM.removeChild(elem, child);
-                } else {
-                    setWidgets(child, fieldInfoMap);
-                }
-                child = next;
+        private void setWidgets(Element elem, FieldInfo<?>[] slots) {
+            NodeList<com.google.gwt.dom.client.Element> list = getSlotElements(elem);
+            for (int i = 0; i < list.getLength(); i++) {
+                com.google.gwt.dom.client.Element marker = list.getItem(i);
+                int slot = TemplateScope.getSlotIndex(marker
+                    .getAttribute(TemplateScope.SLOT_ATTRIBUTE));
+                if (slot < 0 || slot >= slots.length)
+                    continue;
+                setSlotWidget(marker, slots[slot]);
             }
         }
     }
 
+    /**
+     * Returns a static list of all slot elements contained in the given
+     * element in the document order
+     * 
+     * @param elem the element where slot elements should be found
+     * @return a list of slot elements
+     */
+    static native NodeList<com.google.gwt.dom.client.Element> getSlotElements(
+        com.google.gwt.dom.client.Element elem)
+    /*-{
+        var attr = @org.github.gwttemplate.templates.TemplateScope::SLOT_ATTRIBUTE;
+        return elem.querySelectorAll("[" + attr + "]");
+    }-*/;
+
     /**
      * The field context containing mapping between field names and
      * corresponding fields
@@ -115,30 +170,6 @@ public class TemplatePanel extends Composite {
         initWidget(panel);
     }
 
-    /**
-     * The default constructor initializing the internal HTML and replacing all
-     * widget placeholders by the corresponding widgets. The given HTML can
-     * contain HTML elements marked by unique identifiers; If for such elements
-     * there are corresponding widgets in the given map then these elements will
-     * be replaced by widgets.
-     * 
-     * @param panel the panel which owns this template panel
-     * @param html the HTML to set; this HTML contains placeholders marked by
-     *        unique identifiers; these placeholders will be replaced by the
-     *        corresponding widgets
-     * @param fieldInfoMap this map contains element identifiers and the
-     *        corresponding to them {@link FieldInfo} objects; these field info
-     *        objects are used to instantiate widgets which are inserted in the
-     *        content instead placeholders
-     */
-    protected TemplatePanel(
-        TemplateTopPanel parent,
-        String html,
-        Map<String, FieldInfo<?>> fieldInfoMap) {
-        this(parent);
-        setPanelContent(html, fieldInfoMap);
-    }
-
     /**
      * Returns the field panel managing the mapping between field names and the
      * corresponding widget wrappers
@@ -150,22 +181,56 @@ public class TemplatePanel extends Composite {
     }
 
     /**
-     * Sets the internal HTML and replaces all widget placeholders by the
-     * corresponding widgets. The given HTML should contain HTML elements marked
-     * by unique identifiers; If for such elements there are corresponding
-     * widgets in the given map then these elements will be replaced by widgets.
+     * Sets the pre-merged HTML of the given template scope and replaces all
+     * slot elements by widgets of the corresponding fields.
+     * 
+     * @param scope the pre-merged HTML of a template scope
+     * @param slots fields corresponding to slots of the scope
+     * @param clone if this flag is <code>true</code> then the content is
+     *        cloned from the prototype element of the scope instead of
+     *        parsing the HTML
+     */
+    void setPanelContent(
+        TemplateScope scope,
+        FieldInfo<?>[] slots,
+        boolean clone) {
+        InternalPanel panel = (InternalPanel) getWidget();
+        panel.setPanelContent(scope, slots, clone);
+    }
+
+    /**
+     * Sets the pre-merged HTML of the given template scope without binding
+     * widgets. Slot elements stay in the content until they are replaced by
+     * the {@link #setSlotWidget(com.google.gwt.dom.client.Element, FieldInfo)}
+     * method.
+     * 
+     * @param scope the pre-merged HTML of a template scope
+     * @param clone if this flag is <code>true</code> then the content is
+     *        cloned from the prototype element of the scope instead of
+     *        parsing the HTML
+     * @return slot elements; each element has the same index as the
+     *         corresponding slot
+     */
+    com.google.gwt.dom.client.Element[] setPanelHtml(
+        TemplateScope scope,
+        boolean clone) {
+        InternalPanel panel = (InternalPanel) getWidget();
+        return panel.setPanelHtml(scope, clone);
+    }
+
+    /**
+     * Replaces the given slot element by the widget of the specified field
      * 
-     * @param html the HTML to set; this HTML contains placeholders marked by
-     *        unique identifiers; these placeholders will be replaced by the
-     *        corresponding widgets
-     * @param fieldInfoMap this map contains element identifiers and the
-     *        corresponding to them {@link FieldInfo} objects; these field info
-     *        objects are used to instantiate widgets which are inserted in the
-     *        content instead placeholders
+     * @param marker the slot element returned by the
+     *        {@link #setPanelHtml(TemplateScope, boolean)} method
+     * @param field the field corresponding to the slot; if it is
+     *        <code>null</code> then the slot element is just removed
      */
-    void setPanelContent(String html, Map<String, FieldInfo<?>> fieldInfoMap) {
+    void setSlotWidget(
+        com.google.gwt.dom.client.Element marker,
+        FieldInfo<?> field) {
         InternalPanel panel = (InternalPanel) getWidget();
-        panel.setPanelContent(html, fieldInfoMap);
+        panel.setSlotWidget(marker, field);
     }
 
 }
\ No newline at end of file
@@ -12,19 +12,29 @@ package org.github.gwttemplate.templates;
 
 import org.github.gwttemplate.templates.cache.CacheBuilder;
 import org.github.gwttemplate.templates.cache.CacheNode;
+import org.github.gwttemplate.templates.cache.CacheProgram;
 import org.github.gwttemplate.templates.cache.CompositeCacheNode;
-import org.github.gwttemplate.templates.cache.CacheNodeVisitor;
-import org.github.gwttemplate.templates.cache.TextCacheNode;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import com.google.gwt.core.client.Duration;
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.RepeatingCommand;
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
+import com.google.gwt.user.client.rpc.AsyncCallback;
 import com.google.gwt.xml.client.Document;
 import com.google.gwt.xml.client.Element;
 import com.google.gwt.xml.client.Node;
 import com.google.gwt.xml.client.Text;
+import com.google.gwt.xml.client.XMLParser;
 
 /**
  * This is a registry of {@link FieldInfoFactory} instances. It maps individual
@@ -36,46 +46,36 @@ import com.google.gwt.xml.client.Text;
 public class TemplatePanelBuilder implements TemplateNamespaces {
 
     /**
-     * Instances of this type are used to keep in the cache XML elements
-     * defining widgets in templates
+     * The interpreter of compiled templates used to build real widgets. Static
+     * texts ({@link CacheProgram#TEXT} instructions) are already merged in the
+     * HTML of template scopes so they are skipped. For
+     * {@link CacheProgram#BEGIN_FIELD} / {@link CacheProgram#END_FIELD}
+     * instructions it calls the
+     * {@link TemplatePanelGenerator#beginField(FieldInfoFactory, Map, TemplateScope)}
+     * / {@link TemplatePanelGenerator#endField()} methods creating new dynamic
+     * GWT widgets.
      */
-    static class ElementCache extends CompositeCacheNode {
+    static class PanelGeneratingInterpreter extends TemplatePanelGenerator {
 
         /**
-         * The cached XML element
+         * The number of fields started and not finished yet
          */
-        public final Element element;
+        private int fDepth;
 
         /**
-         * The field wrapper factory corresponding to the XML element.
+         * The number of created fields (without the topmost node)
          */
-        public final FieldInfoFactory factory;
+        private int fFieldPos = -1;
 
         /**
-         * The default constructor used to initialize the internal fields
-         * 
-         * @param factory the field wrapper factory
-         * @param e the XML element to cache
+         * The index of the next instruction to execute
          */
-        public ElementCache(FieldInfoFactory factory, Element e) {
-            this.factory = factory;
-            this.element = e;
-        }
+        private int fPos;
 
-    }
-
-    /**
-     * The cache node visitor used to build real widgets. When this visitor
-     * visits cached static text nodes it just append the text to the template
-     * using the {@link TemplatePanelGenerator#addText(String)} method. When
-     * this visitor enters in dynamic nodes it calls the
-     * {@link TemplatePanelGenerator#beginField(FieldInfoFactory, Map)} /
-     * {@link TemplatePanelGenerator#endField()} methods creating new dynamic
-     * GWT widgets.
-     */
-    static class PanelGeneratingVisitor extends TemplatePanelGenerator
-        implements
-        CacheNodeVisitor {
+        /**
+         * The template to execute
+         */
+        private CompiledTemplate fTemplate;
 
         /**
          * This constructor initializes the panel which should be filled with
@@ -83,45 +83,228 @@ public class TemplatePanelBuilder implements TemplateNamespaces {
          * 
          * @param panel the topmost panel to initialize
          */
-        public PanelGeneratingVisitor(TemplateTopPanel panel) {
+        public PanelGeneratingInterpreter(TemplateTopPanel panel) {
             super(panel);
         }
 
         /**
-         * This method calls the
-         * {@link TemplatePanelGenerator#beginField(FieldInfoFactory, Map)} /
-         * {@link TemplatePanelGenerator#endField()} methods creating new
-         * dynamic GWT widgets.
+         * Executes all instructions of the program of the given template in
+         * one linear pass.
          * 
-         * @see CacheNodeVisitor.templates.cache.ICacheNodeVisitor#visit(gwt.templates.cache.CompositeCacheNode)
+         * @param template the compiled template to execute
          */
-        public void visit(CompositeCacheNode node) {
-            ElementCache e = (ElementCache) node;
-            Map<String, String> attributes = XMLUtil.toParameters(e.element);
-            String tagURI = XMLUtil.getURL(e.element);
-            attributes.put(TAG_URI, tagURI);
-            beginField(e.factory, attributes);
+        public void execute(CompiledTemplate template) {
+            start(template);
+            executeSlice(-1);
+        }
+
+        /**
+         * Executes the next instructions of the program until the given time
+         * budget is exhausted. At least one instruction is executed.
+         * 
+         * @param budget the time budget in milliseconds; if it is negative
+         *        then all remaining instructions are executed
+         * @return <code>true</code> if there are still instructions to execute
+         */
+        public boolean executeSlice(int budget) {
+            CacheProgram program = fTemplate.getProgram();
+            int[] codes = program.getCodes();
+            int[] operands = program.getOperands();
+            CompositeCacheNode[] nodes = program.getNodes();
+            double start = budget >= 0 ? Duration.currentTimeMillis() : 0;
             try {
-                for (CacheNode child : node) {
-                    child.accept(this);
+                while (fPos < codes.length) {
+                    int i = fPos++;
+                    switch (codes[i]) {
+                        case CacheProgram.BEGIN_FIELD:
+                            int idx = operands[i];
+                            ElementCache e = (ElementCache) nodes[idx];
+                            beginField(
+                                e.factory,
+                                new AttributeMap(e.attributes),
+                                fTemplate.getScope(idx));
+                            fDepth++;
+                            fFieldPos++;
+                            break;
+                        case CacheProgram.END_FIELD:
+                            fDepth--;
+                            endField();
+                            break;
+                    }
+                    if (budget >= 0
+                        && Duration.currentTimeMillis() - start >= budget)
+                        break;
                 }
-            } finally {
+            } catch (RuntimeException e) {
+                abort();
+                throw e;
+            }
+            return fPos < codes.length;
+        }
+
+        /**
+         * Stops the execution of the program and finishes all started fields,
+         * so the generator stack is balanced even if a field factory fails
+         */
+        private void abort() {
+            fPos = fTemplate.getProgram().getCodes().length;
+            while (fDepth > 0) {
+                fDepth--;
                 endField();
             }
         }
 
         /**
-         * This method just append static cached HTML to the panel's template
-         * using the {@link TemplatePanelGenerator#addText(String)} method.
+         * Returns the number of fields created so far
+         * 
+         * @return the number of created fields
+         */
+        public int getFieldPos() {
+            return Math.max(fFieldPos, 0);
+        }
+
+        /**
+         * Prepares the execution of the given template
+         * 
+         * @param template the compiled template to execute
+         */
+        public void start(CompiledTemplate template) {
+            fTemplate = template;
+            fPos = 0;
+            fFieldPos = -1;
+            fDepth = 0;
+        }
+
+    }
+
+    /**
+     * This object loads templates with all templates referenced by them (see
+     * {@link TemplatePanelInfo}) using the template resolver. The callback is
+     * notified when all templates are registered or when the first template
+     * can not be loaded.
+     */
+    private class TemplateDependencyLoader {
+
+        /**
+         * The callback to notify
+         */
+        private AsyncCallback<Void> fCallback;
+
+        /**
+         * This flag is <code>true</code> when the callback is notified
+         */
+        private boolean fDone;
+
+        /**
+         * The number of templates being loaded
+         */
+        private int fPending;
+
+        /**
+         * This flag is <code>true</code> when all initial templates are added
+         */
+        private boolean fStarted;
+
+        /**
+         * Names of all checked templates
+         */
+        private Set<String> fVisited = new HashSet<String>();
+
+        /**
+         * @param callback the callback to notify
+         */
+        public TemplateDependencyLoader(AsyncCallback<Void> callback) {
+            fCallback = callback;
+        }
+
+        /**
+         * Loads the template with the specified name (if it is not registered
+         * yet) and all templates referenced by it
+         * 
+         * @param templateName the name of the template
+         */
+        public void add(final String templateName) {
+            if (fDone || !fVisited.add(templateName))
+                return;
+            if (hasTemplate(templateName)) {
+                addReferences(templateName);
+                return;
+            }
+            if (fResolver == null)
+                return;
+            fPending++;
+            resolveTemplate(templateName, new AsyncCallback<Void>() {
+                public void onFailure(Throwable caught) {
+                    if (!fDone) {
+                        fDone = true;
+                        fCallback.onFailure(caught);
+                    }
+                }
+
+                public void onSuccess(Void result) {
+                    fPending--;
+                    if (hasTemplate(templateName)) {
+                        addReferences(templateName);
+                    }
+                    finish();
+                }
+            });
+        }
+
+        /**
+         * Loads all templates referenced by the specified template. References
+         * are read from the cached structure of the template or from its
+         * source element, so templates registered in the lazy compilation
+         * mode are not compiled by this method.
+         * 
+         * @param templateName the name of the template
+         */
+        private void addReferences(String templateName) {
+            Set<String> references = new HashSet<String>();
+            CompositeCacheNode template = fTemplates.get(templateName);
+            if (template != null) {
+                collectTemplateReferences(template, references);
+            } else {
+                collectTemplateReferences(
+                    fTemplateSources.get(templateName),
+                    references);
+            }
+            for (String reference : references) {
+                add(reference);
+            }
+        }
+
+        /**
+         * Notifies the callback if all templates are loaded
+         */
+        public void finish() {
+            if (fStarted && !fDone && fPending == 0) {
+                fDone = true;
+                fCallback.onSuccess(null);
+            }
+        }
+
+        /**
+         * Loads the given templates and all templates referenced by them
          * 
-         * @see CacheNodeVisitor.templates.cache.ICacheNodeVisitor#visit(gwt.templates.cache.TextCacheNode)
+         * @param templateNames names of templates to load
          */
-        public void visit(TextCacheNode node) {
-            addText(node.getText());
+        public void load(Collection<String> templateNames) {
+            for (String name : templateNames) {
+                add(name);
+            }
+            fStarted = true;
+            finish();
         }
 
     }
 
+    /**
+     * The default time budget (in milliseconds) of one slice of the
+     * incremental compilation
+     */
+    public static final int DEFAULT_COMPILATION_BUDGET = 20;
+
     private static final Map<String, String> EMPTY_ATTRIBUE_MAP = null;
 
     /**
@@ -172,10 +355,7 @@ public class TemplatePanelBuilder implements TemplateNamespaces {
                 return null;
             Element e = (Element) object;
             String tagURI = XMLUtil.getURL(e);
-            String ns = XMLUtil.getNamespace(tagURI);
-            String name = XMLUtil.getLocalName(tagURI);
-            FieldInfoFactory factory = fFieldInfoFactoryRegistry
-                .getFieldInfoFactoryNS(ns, name);
+            FieldInfoFactory factory = getFieldInfoFactory(tagURI);
             CompositeCacheNode result = null;
             if (factory != null) {
                 result = new ElementCache(factory, e);
@@ -255,6 +435,13 @@ public class TemplatePanelBuilder implements TemplateNamespaces {
      */
     private Map<String, Map<String, String>> fTemplateAttributes = new HashMap<String, Map<String, String>>();
 
+    /**
+     * This object maps names of templates registered in the lazy compilation
+     * mode to the corresponding XML elements. These elements are transformed
+     * into cached templates when the first panel is built from them.
+     */
+    private Map<String, Element> fTemplateSources = new HashMap<String, Element>();
+
     /**
      * This object maps template names to corresponding cached templates. For
      * each element this class builds a cache and puts it in this map. These
@@ -262,6 +449,58 @@ public class TemplatePanelBuilder implements TemplateNamespaces {
      */
     private Map<String, CompositeCacheNode> fTemplates = new HashMap<String, CompositeCacheNode>();
 
+    /**
+     * This object maps template names to the corresponding compiled templates.
+     * Each compiled template contains a flat sequence of instructions and the
+     * pre-merged HTML of all scopes built from the cached template with the
+     * same name (see {@link #fTemplates}).
+     */
+    private Map<String, CompiledTemplate> fCompiledTemplates = new HashMap<String, CompiledTemplate>();
+
+    /**
+     * If this flag is <code>true</code> then templates are compiled only when
+     * the first panel is built from them (see {@link #setLazyCompilation(boolean)})
+     */
+    private boolean fLazyCompilation;
+
+    /**
+     * If this flag is <code>true</code> (by default) then contents of closed
+     * disclosure panels and hidden tabs are materialized only when they are
+     * shown for the first time (see {@link DeferredTemplatePanelContainer}).
+     */
+    private boolean fLazyContent = true;
+
+    /**
+     * Names of templates instantiated in the prototype-clone mode. The HTML of
+     * each scope of these templates is parsed only once and new panels are
+     * initialized with deep copies of the parsed elements.
+     */
+    private Set<String> fPrototypeTemplates = new HashSet<String>();
+
+    /**
+     * Names of templates to load during idle time (see
+     * {@link #prefetchTemplates(Collection)})
+     */
+    private List<String> fPrefetchQueue = new ArrayList<String>();
+
+    /**
+     * This flag is <code>true</code> while a prefetch step is scheduled or
+     * running
+     */
+    private boolean fPrefetching;
+
+    /**
+     * This object maps names of templates being loaded by the template
+     * resolver to callbacks waiting for them
+     */
+    private Map<String, List<AsyncCallback<Void>>> fPendingTemplates = new HashMap<String, List<AsyncCallback<Void>>>();
+
+    /**
+     * The resolver used to load missing templates; it is <code>null</code> if
+     * all templates are registered explicitly
+     */
+    private TemplateResolver fResolver;
+
     /**
      * This constructor initializes the internal widget registry.
      * 
@@ -299,21 +538,65 @@ public class TemplatePanelBuilder implements TemplateNamespaces {
         String templateName,
         Element templateNode,
         Map<String, String> attributes) {
-        CompositeCacheNode template = fBuilder.build(templateNode);
+        if (fLazyCompilation) {
+            fTemplates.remove(templateName);
+            fCompiledTemplates.remove(templateName);
+            fTemplateSources.put(templateName, templateNode);
+            setTemplateAttributes(templateName, attributes);
+        } else {
+            CompositeCacheNode template = fBuilder.build(templateNode);
+            addTemplate(templateName, template, attributes);
+        }
+    }
+
+    /**
+     * Registers a new template defined by the given cache structure. The
+     * topmost node and all dynamic nodes of the structure should be
+     * {@link ElementCache} instances. This method is used to register
+     * templates compiled outside of the browser (for example by code
+     * generated from templates at compile time).
+     * 
+     * @param templateName the name of the template
+     * @param template the cached template
+     * @param attributes attributes of the template
+     */
+    public void addTemplate(
+        String templateName,
+        CompositeCacheNode template,
+        Map<String, String> attributes) {
+        fTemplateSources.remove(templateName);
         fTemplates.put(templateName, template);
-        if (attributes != null) {
-            fTemplateAttributes.put(templateName, attributes);
+        if (fLazyCompilation) {
+            fCompiledTemplates.remove(templateName);
         } else {
-            fTemplateAttributes.remove(templateName);
+            fCompiledTemplates.put(templateName, new CompiledTemplate(template));
         }
+        setTemplateAttributes(templateName, attributes);
     }
 
     /**
      * Reads all templates declared in the given document and registers them.
      * 
      * @param doc the document containing template declarations.
+     * @return names of registered templates in the document order
      */
-    public void addTemplates(Document doc) {
+    public List<String> addTemplates(Document doc) {
+        return addTemplates(doc, true);
+    }
+
+    /**
+     * Reads all templates declared in the given document and registers them.
+     * 
+     * @param doc the document containing template declarations.
+     * @param keepSources if this flag is <code>true</code> then templates are
+     *        registered with the {@link #addTemplate(String, Element, Map)}
+     *        method (so XML elements can be kept until the first use in the
+     *        lazy compilation mode); otherwise cached structures are built
+     *        immediately and no references to the document are kept
+     * @return names of registered templates in the document order
+     */
+    private List<String> addTemplates(Document doc, boolean keepSources) {
+        List<String> result = new ArrayList<String>();
         Element e = doc.getDocumentElement();
         Node child = e.getFirstChild();
         String url = NS_TEMPLATES + "template";
@@ -328,12 +611,264 @@ public class TemplatePanelBuilder implements TemplateNamespaces {
                     if (name != null) {
                         Map<String, String> attributes = XMLUtil
                             .getAttributes(element);
-                        addTemplate(name, element, attributes);
+                        if (keepSources) {
+                            addTemplate(name, element, attributes);
+                        } else {
+                            addTemplate(
+                                name,
+                                fBuilder.build(element),
+                                attributes);
+                        }
+                        result.add(name);
                     }
                 }
             }
             child = child.getNextSibling();
         }
+        return result;
+    }
+
+    /**
+     * Reads all templates declared in the given text and registers them. The
+     * text can be a template bundle (see {@link TemplateBundle}) which is
+     * decoded without XML parsing or an XML document containing template
+     * declarations.
+     * 
+     * @param text a template bundle or the text of an XML document with
+     *        template declarations
+     * @return names of registered templates
+     */
+    public List<String> addTemplates(String text) {
+        if (TemplateBundle.isBundle(text))
+            return new TemplateBundleReader(this).read(text);
+        Document doc = XMLParser.parse(text);
+        return addTemplates(doc);
+    }
+
+    /**
+     * Reads all templates declared in the given text and registers them
+     * without keeping any reference to the parsed XML document. Unlike
+     * {@link #addTemplates(String)} this method builds cached structures of
+     * all templates immediately (even in the lazy compilation mode, where only
+     * the final compilation step is deferred), so the document can be
+     * garbage-collected as soon as this method returns. Template bundles are
+     * decoded without XML parsing.
+     * 
+     * @param text a template bundle or the text of an XML document with
+     *        template declarations
+     * @return names of registered templates
+     */
+    public List<String> compileTemplates(String text) {
+        if (TemplateBundle.isBundle(text))
+            return new TemplateBundleReader(this).read(text);
+        Document doc = XMLParser.parse(text);
+        return addTemplates(doc, false);
+    }
+
+    /**
+     * Creates a new panel corresponding to the given template and builds its
+     * fields incrementally using the {@link #DEFAULT_COMPILATION_BUDGET} time
+     * budget (see
+     * {@link #buildPanelIncrementally(String, int, ProgressCallback)}).
+     * 
+     * @param templateURI the URI of the template to build
+     * @param callback the callback notified about the progress; it can be
+     *        <code>null</code>
+     * @return a new panel or <code>null</code> if there is no such a template
+     */
+    public TemplateTopPanel buildPanelIncrementally(
+        String templateURI,
+        ProgressCallback<TemplateTopPanel> callback) {
+        return buildPanelIncrementally(
+            templateURI,
+            DEFAULT_COMPILATION_BUDGET,
+            callback);
+    }
+
+    /**
+     * Creates a new panel corresponding to the given template and builds its
+     * fields incrementally. The returned panel already contains the static
+     * HTML of the template; widgets are created and inserted in the visual
+     * (document) order in slices executed by the
+     * {@link Scheduler#scheduleIncremental(RepeatingCommand)} method. Each
+     * slice works until the given time budget is exhausted. When all widgets
+     * are bound the callback receives the panel. The panel should not be
+     * used to access field values before that.
+     * 
+     * @param templateURI the URI of the template to build
+     * @param budget the time budget of one slice in milliseconds
+     * @param callback the callback notified about the progress; it can be
+     *        <code>null</code>
+     * @return a new panel containing the static HTML of the template or
+     *         <code>null</code> if there is no such a template
+     */
+    public TemplateTopPanel buildPanelIncrementally(
+        String templateURI,
+        final int budget,
+        final ProgressCallback<TemplateTopPanel> callback) {
+        final CompiledTemplate template = getCompiledTemplate(templateURI);
+        if (template == null)
+            return null;
+        final TemplateTopPanel panel = new TemplateTopPanel(this);
+        panel.setTemplateName(templateURI);
+        final PanelGeneratingInterpreter generator = new PanelGeneratingInterpreter(
+            panel);
+        generator.setCloneMode(fPrototypeTemplates.contains(templateURI));
+        generator.setLazyContent(fLazyContent);
+        generator.setIncremental(true);
+        generator.start(template);
+        // The first instruction sets the static HTML of the template
+        if (!generator.executeSlice(0)) {
+            finishIncrementalBuild(panel, generator, template, callback);
+            return panel;
+        }
+        Scheduler.get().scheduleIncremental(new RepeatingCommand() {
+            public boolean execute() {
+                boolean next;
+                try {
+                    next = generator.executeSlice(budget);
+                } catch (RuntimeException e) {
+                    if (callback != null) {
+                        callback.onFailure(e);
+                    }
+                    return false;
+                }
+                if (!next) {
+                    finishIncrementalBuild(panel, generator, template, callback);
+                } else if (callback != null) {
+                    callback.onProgress(
+                        generator.getFieldPos(),
+                        template.getFieldCount());
+                }
+                return next;
+            }
+        });
+        return panel;
+    }
+
+    /**
+     * Notifies the given callback that the incremental building of a panel is
+     * finished
+     * 
+     * @param panel the built panel
+     * @param generator the generator used to build the panel
+     * @param template the compiled template
+     * @param callback the callback to notify; it can be <code>null</code>
+     */
+    private void finishIncrementalBuild(
+        TemplateTopPanel panel,
+        PanelGeneratingInterpreter generator,
+        CompiledTemplate template,
+        ProgressCallback<TemplateTopPanel> callback) {
+        if (callback != null) {
+            callback.onProgress(
+                generator.getFieldPos(),
+                template.getFieldCount());
+            callback.onSuccess(panel);
+        }
+    }
+
+    /**
+     * Compiles all registered templates which are not compiled yet in the
+     * background using the {@link #DEFAULT_COMPILATION_BUDGET} time budget
+     * (see {@link #compileTemplatesIncrementally(int, ProgressCallback)}).
+     * 
+     * @param callback the callback notified about the progress of the
+     *        compilation; it can be <code>null</code>
+     */
+    public void compileTemplatesIncrementally(
+        ProgressCallback<TemplatePanelBuilder> callback) {
+        compileTemplatesIncrementally(DEFAULT_COMPILATION_BUDGET, callback);
+    }
+
+    /**
+     * Compiles all registered templates which are not compiled yet in the
+     * background. The work is split in slices executed by the
+     * {@link Scheduler#scheduleIncremental(RepeatingCommand)} method; each
+     * slice compiles templates until the given time budget is exhausted (at
+     * least one template is compiled per slice). Templates requested by
+     * {@link #buildPanel(String)} before the background compilation reaches
+     * them are compiled on demand and they are skipped later. This method is
+     * useful with the lazy compilation mode (see
+     * {@link #setLazyCompilation(boolean)}).
+     * 
+     * @param budget the time budget of one slice in milliseconds
+     * @param callback the callback notified about the progress of the
+     *        compilation; it can be <code>null</code>
+     */
+    public void compileTemplatesIncrementally(
+        final int budget,
+        final ProgressCallback<TemplatePanelBuilder> callback) {
+        final List<String> names = new ArrayList<String>();
+        for (String name : fTemplateSources.keySet()) {
+            names.add(name);
+        }
+        for (String name : fTemplates.keySet()) {
+            if (!fCompiledTemplates.containsKey(name)) {
+                names.add(name);
+            }
+        }
+        Scheduler.get().scheduleIncremental(new RepeatingCommand() {
+
+            private int fPos;
+
+            public boolean execute() {
+                try {
+                    double start = Duration.currentTimeMillis();
+                    while (fPos < names.size()) {
+                        getCompiledTemplate(names.get(fPos++));
+                        if (Duration.currentTimeMillis() - start >= budget)
+                            break;
+                    }
+                } catch (RuntimeException e) {
+                    if (callback != null) {
+                        callback.onFailure(e);
+                    }
+                    return false;
+                }
+                if (callback != null) {
+                    callback.onProgress(fPos, names.size());
+                }
+                boolean next = fPos < names.size();
+                if (!next && callback != null) {
+                    callback.onSuccess(TemplatePanelBuilder.this);
+                }
+                return next;
+            }
+
+        });
+    }
+
+    /**
+     * Creates a new panel corresponding to the given template and sends it to
+     * the specified callback. If the template or any template referenced by
+     * it (see {@link TemplatePanelInfo}) is not registered yet then it is
+     * loaded first using the template resolver (see
+     * {@link #setTemplateResolver(TemplateResolver)}).
+     * 
+     * @param templateURI the URI of the template to build
+     * @param callback the callback receiving the new panel
+     */
+    public void buildPanel(
+        final String templateURI,
+        final AsyncCallback<TemplateTopPanel> callback) {
+        loadTemplates(
+            Collections.singletonList(templateURI),
+            new AsyncCallback<Void>() {
+                public void onFailure(Throwable caught) {
+                    callback.onFailure(caught);
+                }
+
+                public void onSuccess(Void result) {
+                    TemplateTopPanel panel = buildPanel(templateURI);
+                    if (panel != null) {
+                        callback.onSuccess(panel);
+                    } else {
+                        callback.onFailure(new IllegalArgumentException(
+                            "Unknown template: " + templateURI));
+                    }
+                }
+            });
     }
 
     /**
@@ -346,15 +881,106 @@ public class TemplatePanelBuilder implements TemplateNamespaces {
      *         to the given template name
      */
     public TemplateTopPanel buildPanel(String templateURI) {
-        CompositeCacheNode template = fTemplates.get(templateURI);
+        CompiledTemplate template = getCompiledTemplate(templateURI);
         if (template == null)
             return null;
         TemplateTopPanel panel = new TemplateTopPanel(this);
-        PanelGeneratingVisitor generator = new PanelGeneratingVisitor(panel);
-        template.accept(generator);
+        panel.setTemplateName(templateURI);
+        PanelGeneratingInterpreter generator = new PanelGeneratingInterpreter(
+            panel);
+        generator.setCloneMode(fPrototypeTemplates.contains(templateURI));
+        generator.setLazyContent(fLazyContent);
+        generator.execute(template);
         return panel;
     }
 
+    /**
+     * Adds names of all templates referenced by the given node and its
+     * children to the specified set
+     * 
+     * @param node the node to check
+     * @param result the set where template names are added
+     */
+    private void collectTemplateReferences(
+        CompositeCacheNode node,
+        Set<String> result) {
+        if (node == null)
+            return;
+        for (CacheNode child : node) {
+            if (child instanceof ElementCache) {
+                ElementCache e = (ElementCache) child;
+                String reference = e.attributes.get(NS_TEMPLATES + "template");
+                if (reference != null) {
+                    result.add(reference);
+                }
+            }
+            if (child instanceof CompositeCacheNode) {
+                collectTemplateReferences((CompositeCacheNode) child, result);
+            }
+        }
+    }
+
+    /**
+     * Adds names of all templates referenced by descendants of the given
+     * source element to the specified set. Only elements corresponding to
+     * registered widgets are checked, like in the cached structure built from
+     * the same element (see {@link #collectTemplateReferences(CompositeCacheNode, Set)}).
+     * 
+     * @param element the source element to check
+     * @param result the set where template names are added
+     */
+    private void collectTemplateReferences(Element element, Set<String> result) {
+        if (element == null)
+            return;
+        for (Node child = element.getFirstChild(); child != null; child = child
+            .getNextSibling()) {
+            if (!(child instanceof Element))
+                continue;
+            Element e = (Element) child;
+            if (getFieldInfoFactory(XMLUtil.getURL(e)) != null) {
+                String reference = XMLUtil.getAttributeValueNS(
+                    e,
+                    NS_TEMPLATES + "template");
+                if (reference != null) {
+                    result.add(reference);
+                }
+            }
+            collectTemplateReferences(e, result);
+        }
+    }
+
+    /**
+     * Returns the compiled template with the specified name. Templates
+     * registered in the lazy compilation mode are compiled by the first call
+     * to this method and the result is memoized.
+     * 
+     * @param templateName the name of the template
+     * @return the compiled template or <code>null</code> if there is no
+     *         template with the specified name
+     */
+    CompiledTemplate getCompiledTemplate(String templateName) {
+        CompiledTemplate result = fCompiledTemplates.get(templateName);
+        if (result == null) {
+            CompositeCacheNode template = getTemplate(templateName);
+            if (template == null)
+                return null;
+            result = new CompiledTemplate(template);
+            fCompiledTemplates.put(templateName, result);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of compiled templates. If the lazy compilation mode
+     * is not active then this number is the same as the number of registered
+     * templates (see {@link #getTemplateCount()}).
+     * 
+     * @return the number of compiled templates
+     */
+    public int getCompiledTemplateCount() {
+        return fCompiledTemplates.size();
+    }
+
     /**
      * Returns a provider of internationalized messages used by widgets
      * 
@@ -364,6 +990,20 @@ public class TemplatePanelBuilder implements TemplateNamespaces {
         return fConstants;
     }
 
+    /**
+     * Returns the field wrapper factory corresponding to the tag with the
+     * specified URI or <code>null</code> if the tag does not correspond to a
+     * widget
+     * 
+     * @param tagURI the full URI of the tag
+     * @return the field wrapper factory corresponding to the given tag
+     */
+    public FieldInfoFactory getFieldInfoFactory(String tagURI) {
+        String ns = XMLUtil.getNamespace(tagURI);
+        String name = XMLUtil.getLocalName(tagURI);
+        return fFieldInfoFactoryRegistry.getFieldInfoFactoryNS(ns, name);
+    }
+
     /**
      * Returns the internal registry of factories used to create field info
      * objects
@@ -391,6 +1031,58 @@ public class TemplatePanelBuilder implements TemplateNamespaces {
         return result != null ? result : EMPTY_ATTRIBUE_MAP;
     }
 
+    /**
+     * Returns the cached structure of the template with the specified name.
+     * Templates registered in the lazy compilation mode are transformed into
+     * cached structures by the first call to this method.
+     * 
+     * @param templateName the name of the template
+     * @return the cached template or <code>null</code> if there is no
+     *         template with the specified name
+     */
+    public CompositeCacheNode getTemplate(String templateName) {
+        CompositeCacheNode template = fTemplates.get(templateName);
+        if (template == null) {
+            Element source = fTemplateSources.remove(templateName);
+            if (source == null)
+                return null;
+            template = fBuilder.build(source);
+            fTemplates.put(templateName, template);
+        }
+        return template;
+    }
+
+    /**
+     * Returns a template bundle (see {@link TemplateBundle}) containing the
+     * templates with the specified names. Unknown names are ignored. The
+     * resulting bundle can be stored and registered later with the
+     * {@link #addTemplates(String)} method without XML parsing.
+     * 
+     * @param templateNames names of templates to serialize
+     * @return a serialized template bundle
+     */
+    public String getTemplateBundle(Collection<String> templateNames) {
+        TemplateBundleWriter writer = new TemplateBundleWriter();
+        for (String name : templateNames) {
+            CompositeCacheNode template = getTemplate(name);
+            if (template != null) {
+                writer.addTemplate(name, template, fTemplateAttributes
+                    .get(name));
+            }
+        }
+        return writer.toBundle();
+    }
+
+    /**
+     * Returns the number of templates registered in this builder (compiled or
+     * not)
+     * 
+     * @return the number of registered templates
+     */
+    public int getTemplateCount() {
+        return fTemplates.size() + fTemplateSources.size();
+    }
+
     /**
      * Returns a set of all templates registered in this builder
      * 
@@ -400,13 +1092,321 @@ public class TemplatePanelBuilder implements TemplateNamespaces {
         return fTemplateAttributes.keySet();
     }
 
+    /**
+     * Returns the template resolver used to load missing templates
+     * 
+     * @return the template resolver or <code>null</code>
+     */
+    public TemplateResolver getTemplateResolver() {
+        return fResolver;
+    }
+
+    /**
+     * Returns <code>true</code> if a template with the specified name is
+     * registered in this builder (compiled or not)
+     * 
+     * @param templateName the name of the template
+     * @return <code>true</code> if the template is registered
+     */
+    public boolean hasTemplate(String templateName) {
+        return fTemplates.containsKey(templateName)
+            || fTemplateSources.containsKey(templateName);
+    }
+
+    /**
+     * Returns <code>true</code> if the specified template is registered and
+     * compiled
+     * 
+     * @param templateName the name of the template
+     * @return <code>true</code> if the specified template is compiled
+     */
+    public boolean isCompiled(String templateName) {
+        return fCompiledTemplates.containsKey(templateName);
+    }
+
+    /**
+     * Returns <code>true</code> if templates are compiled only when the first
+     * panel is built from them
+     * 
+     * @return <code>true</code> if the lazy compilation mode is active
+     */
+    public boolean isLazyCompilation() {
+        return fLazyCompilation;
+    }
+
+    /**
+     * Returns <code>true</code> if contents of closed disclosure panels and
+     * hidden tabs are materialized only when they are shown for the first time
+     * 
+     * @return <code>true</code> if the lazy content materialization is active
+     */
+    public boolean isLazyContent() {
+        return fLazyContent;
+    }
+
+    /**
+     * Returns <code>true</code> if panels corresponding to the specified
+     * template are instantiated in the prototype-clone mode
+     * 
+     * @param templateName the name of the template
+     * @return <code>true</code> if the prototype-clone mode is used for the
+     *         given template
+     */
+    public boolean isPrototypeMode(String templateName) {
+        return fPrototypeTemplates.contains(templateName);
+    }
+
+    /**
+     * Loads all given templates which are not registered yet and all
+     * templates referenced by them using the template resolver. If there is
+     * no resolver then missing templates are ignored.
+     * 
+     * @param templateNames names of templates to load
+     * @param callback the callback notified when all templates are
+     *        registered
+     */
+    public void loadTemplates(
+        Collection<String> templateNames,
+        AsyncCallback<Void> callback) {
+        new TemplateDependencyLoader(callback).load(templateNames);
+    }
+
+    /**
+     * Notifies all given callbacks about the result of a template load. All
+     * callbacks are notified even if some of them throw an exception; the
+     * first thrown exception is rethrown when all callbacks are notified.
+     * 
+     * @param callbacks the callbacks to notify; it can be <code>null</code>
+     * @param caught the error of the load or <code>null</code> if the load
+     *        succeeded
+     */
+    private static void notifyCallbacks(
+        List<AsyncCallback<Void>> callbacks,
+        Throwable caught) {
+        if (callbacks == null)
+            return;
+        RuntimeException error = null;
+        for (AsyncCallback<Void> c : callbacks) {
+            try {
+                if (caught != null) {
+                    c.onFailure(caught);
+                } else {
+                    c.onSuccess(null);
+                }
+            } catch (RuntimeException e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+        if (error != null)
+            throw error;
+    }
+
+    /**
+     * Adds the given templates to the queue of templates loaded during idle
+     * time. Templates are loaded one by one (with templates referenced by
+     * them) when there are no pending loads of templates required by
+     * {@link #buildPanel(String, AsyncCallback)}. This method does nothing if
+     * there is no template resolver.
+     * 
+     * @param templateNames names of templates likely to be used soon
+     */
+    public void prefetchTemplates(Collection<String> templateNames) {
+        for (String name : templateNames) {
+            if (!hasTemplate(name) && !fPrefetchQueue.contains(name)) {
+                fPrefetchQueue.add(name);
+            }
+        }
+        schedulePrefetch();
+    }
+
     /**
      * Removes a template corresponding to the given template name
      * 
      * @param templateName the name of the template to remove
      */
     public void removeTemplate(String templateName) {
+        fTemplateSources.remove(templateName);
         fTemplates.remove(templateName);
+        fCompiledTemplates.remove(templateName);
+    }
+
+    /**
+     * Loads the specified template using the template resolver. Concurrent
+     * requests for the same template are attached to the pending load.
+     * 
+     * @param templateName the name of the template to load
+     * @param callback the callback notified when the template is loaded
+     */
+    private void resolveTemplate(
+        final String templateName,
+        AsyncCallback<Void> callback) {
+        List<AsyncCallback<Void>> callbacks = fPendingTemplates
+            .get(templateName);
+        if (callbacks != null) {
+            callbacks.add(callback);
+            return;
+        }
+        callbacks = new ArrayList<AsyncCallback<Void>>();
+        callbacks.add(callback);
+        fPendingTemplates.put(templateName, callbacks);
+        fResolver.loadTemplate(templateName, new AsyncCallback<Void>() {
+            public void onFailure(Throwable caught) {
+                try {
+                    notifyCallbacks(
+                        fPendingTemplates.remove(templateName),
+                        caught);
+                } finally {
+                    schedulePrefetch();
+                }
+            }
+
+            public void onSuccess(Void result) {
+                try {
+                    notifyCallbacks(
+                        fPendingTemplates.remove(templateName),
+                        null);
+                } finally {
+                    schedulePrefetch();
+                }
+            }
+        });
+    }
+
+    /**
+     * Schedules loading of the next template of the prefetch queue. Nothing
+     * is scheduled while templates are being loaded; this method is called
+     * again when each load of the template resolver completes (see
+     * {@link #resolveTemplate(String, AsyncCallback)}).
+     */
+    private void schedulePrefetch() {
+        if (fPrefetching
+            || fResolver == null
+            || fPrefetchQueue.isEmpty()
+            || !fPendingTemplates.isEmpty())
+            return;
+        fPrefetching = true;
+        scheduleIdle(new ScheduledCommand() {
+            public void execute() {
+                if (!fPendingTemplates.isEmpty() || fPrefetchQueue.isEmpty()) {
+                    fPrefetching = false;
+                    return;
+                }
+                String name = fPrefetchQueue.remove(0);
+                loadTemplates(
+                    Collections.singletonList(name),
+                    new AsyncCallback<Void>() {
+                        public void onFailure(Throwable caught) {
+                            onSuccess(null);
+                        }
+
+                        public void onSuccess(Void result) {
+                            fPrefetching = false;
+                            schedulePrefetch();
+                        }
+                    });
+            }
+        });
+    }
+
+    /**
+     * Executes the given command when the browser is idle (or after a short
+     * delay if the browser does not support idle callbacks)
+     * 
+     * @param command the command to execute
+     */
+    private static native void scheduleIdle(ScheduledCommand command)
+    /*-{
+        var f = $entry(function() {
+            command.@com.google.gwt.core.client.Scheduler.ScheduledCommand::execute()();
+        });
+        if ($wnd.requestIdleCallback) {
+            $wnd.requestIdleCallback(f);
+        } else {
+            $wnd.setTimeout(f, 50);
+        }
+    }-*/;
+
+    /**
+     * Activates or deactivates the lazy compilation mode. In this mode
+     * templates registered from XML documents keep only a reference to the
+     * source element; they are compiled when the first panel is built from
+     * them (see {@link #buildPanel(String)}) and the result is memoized.
+     * Templates registered as cache structures (bundles, generated providers)
+     * are transformed into flat programs only on first use as well. The mode
+     * should be set before templates are added; it does not affect already
+     * registered templates. Note that source elements (and so their
+     * documents) stay reachable until all templates from them are compiled;
+     * the {@link #compileTemplates(String)} method registers documents
+     * without keeping them.
+     * 
+     * @param lazyCompilation the flag to set
+     */
+    public void setLazyCompilation(boolean lazyCompilation) {
+        fLazyCompilation = lazyCompilation;
+    }
+
+    /**
+     * Activates or deactivates the lazy materialization of contents of closed
+     * disclosure panels and hidden tabs. If this mode is active then fields of
+     * such contents are registered in the panel but their widgets are created
+     * only when the content is shown for the first time. Values and enabled
+     * states set for these fields before are buffered.
+     * 
+     * @param lazyContent the flag to set
+     */
+    public void setLazyContent(boolean lazyContent) {
+        fLazyContent = lazyContent;
+    }
+
+    /**
+     * Activates or deactivates the prototype-clone mode for the template with
+     * the specified name. In this mode the HTML of each template scope is
+     * parsed by the browser only once into a detached prototype element and
+     * each new panel receives a deep copy of this element. This mode is
+     * useful for templates instantiated many times (rows of grids, repeated
+     * forms...).
+     * 
+     * @param templateName the name of the template
+     * @param prototype if this flag is <code>true</code> then the
+     *        prototype-clone mode is used for the template
+     */
+    public void setPrototypeMode(String templateName, boolean prototype) {
+        if (prototype) {
+            fPrototypeTemplates.add(templateName);
+        } else {
+            fPrototypeTemplates.remove(templateName);
+        }
+    }
+
+    /**
+     * Sets the resolver used to load templates which are not registered yet
+     * (see {@link #buildPanel(String, AsyncCallback)} and
+     * {@link #prefetchTemplates(Collection)})
+     * 
+     * @param resolver the template resolver to set
+     */
+    public void setTemplateResolver(TemplateResolver resolver) {
+        fResolver = resolver;
+        schedulePrefetch();
+    }
+
+    /**
+     * Sets attributes associated with the specified template
+     * 
+     * @param templateName the name of the template
+     * @param attributes attributes of the template; it can be
+     *        <code>null</code>
+     */
+    private void setTemplateAttributes(
+        String templateName,
+        Map<String, String> attributes) {
+        if (attributes != null) {
+            fTemplateAttributes.put(templateName, attributes);
+        } else {
+            fTemplateAttributes.remove(templateName);
+        }
     }
 
     /**
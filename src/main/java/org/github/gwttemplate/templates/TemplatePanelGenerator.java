@@ -10,14 +10,17 @@
  *******************************************************************************/
 package org.github.gwttemplate.templates;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
+import com.google.gwt.user.client.Command;
+
 /**
  * This is an utility class used to initialize {@link FieldInfoContext}
- * instances. It builds the HTML layout for the panel from individual parts of
- * the HTML, adds new widgets which should be inserted in this HTML template and
- * when all operations are done it binds the widgets to the template.
+ * instances. It creates new widgets which should be inserted in the
+ * pre-merged HTML layout of each template scope and when all operations are
+ * done it binds the widgets to the template.
  * 
  * 
  */
@@ -33,17 +36,24 @@ class TemplatePanelGenerator {
     private static class Placeholder {
 
         /**
-         * The field info object corresponding to this object
+         * This flag is <code>true</code> if the field of this placeholder was
+         * accepted by the parent field and it is placed in the HTML of the
+         * parent scope
          */
-        protected FieldInfo<?> fField;
+        protected boolean fAccepted;
 
         /**
-         * The unique identifier of the field wrapper (and the corresponding GWT
-         * widget) in the HTML template. This identifier is associated with a
-         * span element and it is used to replace these span elements by widgets
-         * when the building of the HTML template is finished.
+         * The placeholder of the nearest container which postpones the
+         * creation of its content (see {@link DeferredTemplatePanelContainer});
+         * it is <code>null</code> if this placeholder is not a part of a
+         * deferred content.
          */
-        protected String fId;
+        protected TemplatePlaceholder fDeferredRoot;
+
+        /**
+         * The field info object corresponding to this object
+         */
+        protected FieldInfo<?> fField;
 
         /**
          * The parent placeholder. This parent manages the widget corresponding
@@ -58,11 +68,10 @@ class TemplatePanelGenerator {
          * @param field the field
          */
         public Placeholder(Placeholder parent, FieldInfo<?> field) {
-            fId = "__tmps_" + fIdCounter++;
             fParent = parent;
             fField = field;
             if (fParent != null) {
-                fParent.addChildField(fId, fField);
+                fAccepted = fParent.addChildField(fField);
             }
         }
 
@@ -70,22 +79,14 @@ class TemplatePanelGenerator {
          * Adds the given child field to the internal managed field using the
          * {@link FieldInfo#addChildFieldInfo(FieldInfo)} method.
          * 
-         * @param id the temporary unique identifier of the field
          * @param field the field to add to the internal managed field
+         * @return <code>true</code> if the given field was accepted and it
+         *         should be added to the HTML of the scope
          */
-        public void addChildField(String id, FieldInfo<?> field) {
+        public boolean addChildField(FieldInfo<?> field) {
             if (fField != null)
-                fField.addChildFieldInfo(field);
-        }
-
-        /**
-         * If this object deals with HTML templates then this method appends a
-         * new peace of the HTML to the internal template; otherwise it does
-         * nothing.
-         * 
-         * @param str the text to add to the template
-         */
-        public void addText(String str) {
+                return fField.addChildFieldInfo(field);
+            return true;
         }
 
         /**
@@ -118,11 +119,10 @@ class TemplatePanelGenerator {
     }
 
     /**
-     * Instances of this type are used to merge all text blocks together in one
-     * HTML where all {@link FieldInfo} objects (and the corresponding GWT
-     * widgets) are replaced by placeholder <code>span</code> elements with
-     * unique identifiers. When the whole HTML template is finished then this
-     * class instantiates widgets and replaces the placeholder spans by the
+     * Instances of this type are used to bind all child {@link FieldInfo}
+     * objects (and the corresponding GWT widgets) to the slots of the
+     * pre-merged HTML of a template scope. When the scope is finished then
+     * this class instantiates widgets and replaces the slot elements by the
      * corresponding widgets.
      * 
      * 
@@ -130,56 +130,104 @@ class TemplatePanelGenerator {
     private class TemplatePlaceholder extends Placeholder {
 
         /**
-         * The string buffer used to merge all peaces of HTML and span
-         * placeholders in one template.
+         * The index of the first slot which is not bound yet; it is used only
+         * in the incremental mode (see {@link #fMarkers})
+         */
+        private int fBoundPos;
+
+        /**
+         * Fields of the deferred content; it is used only if this placeholder
+         * is the root of a deferred content.
+         */
+        private List<FieldInfo<?>> fDeferredFields;
+
+        /**
+         * Commands binding template panels of the deferred content; it is used
+         * only if this placeholder is the root of a deferred content.
+         */
+        private List<Command> fLoaders;
+
+        /**
+         * Slot elements of the topmost scope already set in the panel; it is
+         * not <code>null</code> only for the topmost placeholder in the
+         * incremental mode. In this mode each slot is replaced by the widget
+         * as soon as the corresponding field is finished.
+         */
+        private com.google.gwt.dom.client.Element[] fMarkers;
+
+        /**
+         * The pre-merged HTML of the scope managed by this placeholder
          */
-        private StringBuffer fBuf = new StringBuffer();
+        private TemplateScope fScope;
 
         /**
-         * This map is used to put in relation identifiers of child widgets and
-         * the corresponding placeholders in the HTML template
+         * The index of the next slot in the scope
          */
-        private Map<String, FieldInfo<?>> fMap = new HashMap<String, FieldInfo<?>>();
+        private int fSlotPos;
+
+        /**
+         * Fields corresponding to slots of the scope. This array contains
+         * <code>null</code> values for child fields which should not be added
+         * to the HTML of the scope.
+         */
+        private FieldInfo<?>[] fSlots;
 
         /**
          * This constructor adds this placeholder in the parent.
          * 
          * @param parent the parent placeholder
          * @param field the field
+         * @param scope the pre-merged HTML of the scope
          */
-        public TemplatePlaceholder(Placeholder parent, FieldInfo<?> field) {
+        public TemplatePlaceholder(
+            Placeholder parent,
+            FieldInfo<?> field,
+            TemplateScope scope) {
             super(parent, field);
+            fScope = scope;
+            fSlots = new FieldInfo<?>[scope.getSlotCount()];
         }
 
         /**
-         * This method inserts a new span placeholder with the id of the given
-         * object in the HTML template and adds the widget to the internal map
-         * of widgets. This map is used to replace span placeholders by real
-         * widgets when the template is finished.
+         * This method associates the given field with the next slot of the
+         * scope. The slot is replaced by the widget of the field when the
+         * scope is finished.
          * 
-         * @param id the identifier of the child field
          * @param field the child field to add
          */
         @Override
-        public void addChildField(String id, FieldInfo<?> field) {
-            boolean add = true;
-            if (fField != null) {
-                add = fField.addChildFieldInfo(field);
-            }
+        public boolean addChildField(FieldInfo<?> field) {
+            boolean add = super.addChildField(field);
+            int slot = fSlotPos++;
             if (add) {
-                fMap.put(id, field);
-                fBuf.append("<span id='" + id + "'></span>");
+                fSlots[slot] = field;
             }
+            return add;
         }
 
         /**
-         * Appends a new peace of the HTML to the internal template
+         * Replaces all slot elements of finished child fields by the
+         * corresponding widgets; it is used only in the incremental mode.
+         */
+        public void bindSlots() {
+            for (; fBoundPos < fSlotPos; fBoundPos++) {
+                com.google.gwt.dom.client.Element marker = fMarkers[fBoundPos];
+                if (marker != null) {
+                    fTopPanel.setSlotWidget(marker, fSlots[fBoundPos]);
+                    fMarkers[fBoundPos] = null;
+                }
+            }
+        }
+
+        /**
+         * Registers the given field as a part of the deferred content managed
+         * by this placeholder
          * 
-         * @param str the text to add to the template
+         * @param field the field to register
          */
-        @Override
-        public void addText(String str) {
-            fBuf.append(str);
+        public void addDeferredField(FieldInfo<?> field) {
+            field.setDeferred(true);
+            fDeferredFields.add(field);
         }
 
         /**
@@ -191,28 +239,140 @@ class TemplatePanelGenerator {
          */
         @Override
         public void done() {
-            if (fBuf.length() == 0)
+            Command binding = null;
+            if (!fScope.isEmpty()) {
+                if (fMarkers != null) {
+                    fSlotPos = fSlots.length;
+                    bindSlots();
+                } else if (fParent == null) {
+                    fTopPanel.setPanelContent(fScope, fSlots, fCloneMode);
+                } else if (fField instanceof TemplatePanelContainer) {
+                    binding = newBinding();
+                }
+            }
+            if (fDeferredRoot == null) {
+                if (binding != null) {
+                    binding.execute();
+                }
+            } else {
+                if (binding != null) {
+                    fDeferredRoot.fLoaders.add(binding);
+                }
+                if (fDeferredRoot == this) {
+                    ((DeferredTemplatePanelContainer) fField)
+                        .setTemplatePanelLoader(new ContentLoader(
+                            fLoaders,
+                            fDeferredFields));
+                }
+            }
+        }
+
+        /**
+         * Marks this placeholder as the root of a deferred content
+         */
+        public void initDeferredRoot() {
+            fDeferredRoot = this;
+            fLoaders = new ArrayList<Command>();
+            fDeferredFields = new ArrayList<FieldInfo<?>>();
+        }
+
+        /**
+         * Returns a new command creating a template panel for the scope of
+         * this placeholder and setting it in the container field
+         * 
+         * @return a new command binding the template panel
+         */
+        private Command newBinding() {
+            final TemplateScope scope = fScope;
+            final FieldInfo<?>[] slots = fSlots;
+            final TemplatePanelContainer container = (TemplatePanelContainer) fField;
+            final boolean cloneMode = fCloneMode;
+            return new Command() {
+                public void execute() {
+                    TemplatePanel panel = new TemplatePanel(fTopPanel);
+                    panel.setPanelContent(scope, slots, cloneMode);
+                    container.setTemplatePanel(panel);
+                }
+            };
+        }
+
+    }
+
+    /**
+     * This command materializes a deferred content. It binds all template
+     * panels of the content and applies buffered values of deferred fields.
+     * 
+     * 
+     */
+    private static class ContentLoader implements Command {
+
+        /**
+         * Fields of the deferred content
+         */
+        private List<FieldInfo<?>> fFields;
+
+        /**
+         * Commands binding template panels of the content; inner panels are
+         * bound first
+         */
+        private List<Command> fLoaders;
+
+        /**
+         * This constructor initializes internal fields
+         * 
+         * @param loaders commands binding template panels of the content
+         * @param fields fields of the deferred content
+         */
+        public ContentLoader(List<Command> loaders, List<FieldInfo<?>> fields) {
+            fLoaders = loaders;
+            fFields = fields;
+        }
+
+        /**
+         * @see com.google.gwt.user.client.Command#execute()
+         */
+        public void execute() {
+            List<Command> loaders = fLoaders;
+            List<FieldInfo<?>> fields = fFields;
+            if (loaders == null)
                 return;
-            if (fParent == null) {
-                fTopPanel.setPanelContent(fBuf.toString(), fMap);
-            } else if (fField instanceof TemplatePanelContainer) {
-                TemplatePanel panel = new TemplatePanel(fTopPanel);
-                panel.setPanelContent(fBuf.toString(), fMap);
-                ((TemplatePanelContainer) fField).setTemplatePanel(panel);
+            fLoaders = null;
+            fFields = null;
+            for (Command loader : loaders) {
+                loader.execute();
+            }
+            for (FieldInfo<?> field : fields) {
+                field.materialize();
             }
         }
 
     }
 
     /**
-     * The global counter used to generate unique placeholder identifiers
+     * If this flag is <code>true</code> then the content of template scopes is
+     * cloned from prototype elements instead of parsing the HTML for each
+     * panel.
+     */
+    private boolean fCloneMode;
+
+    /**
+     * If this flag is <code>true</code> then the HTML of the topmost scope is
+     * set in the panel before all fields are created and each slot is
+     * replaced by the widget as soon as the corresponding field is finished.
+     */
+    private boolean fIncremental;
+
+    /**
+     * If this flag is <code>true</code> then contents of containers
+     * implementing the {@link DeferredTemplatePanelContainer} interface are
+     * materialized only when they are shown for the first time.
      */
-    private static int fIdCounter;
+    private boolean fLazyContent;
 
     /**
-     * The current placeholder object. It is used to create the real HTML
-     * template and accumulate all widgets (with their respective wrappers)
-     * which should be placed in the HTML template.
+     * The current placeholder object. It is used to accumulate all widgets
+     * (with their respective wrappers) which should be placed in the HTML
+     * template.
      */
     private Placeholder fPeek;
 
@@ -236,42 +396,90 @@ class TemplatePanelGenerator {
         fTopPanel = panel;
     }
 
-    /**
-     * Appends the text to the HTML template
-     * 
-     * @param str the text to append to the template
-     */
-    public void addText(String str) {
-        fPeek.addText(str);
-    }
-
     /**
      * Marks the beginning of the position where this field should be inserted
      * in the template. To define the end of this field in the template the
      * method {@link #endField()} HAVE to be called. If this field implements
-     * the {@link TemplatePanelContainer} interface then all text blocks and
-     * new fields will be transformed into a new widget which will be appended
-     * to this field using the
+     * the {@link TemplatePanelContainer} interface then the pre-merged HTML of
+     * the given scope and all new fields will be transformed into a new
+     * widget which will be appended to this field using the
      * {@link TemplatePanelContainer#setTemplatePanel(TemplatePanel)} method.
-     * Otherwise all calls before the {@link #endField()} call will be ignored.
+     * Otherwise the HTML of the scope is ignored.
      * 
      * @param fieldFactory the field factory used to create a new field wrapper
      * @param attributes all attributes used to create the field
+     * @param scope the pre-merged HTML of the field content
      */
     public void beginField(
         FieldInfoFactory fieldFactory,
-        Map<String, String> attributes) {
+        Map<String, String> attributes,
+        TemplateScope scope) {
         FieldInfo<?> field = fieldFactory != null ? fieldFactory.newFieldInfo(
             fTopPanel,
             attributes) : null;
+        Placeholder parent = fPeek;
         if (field == null || field instanceof TemplatePanelContainer) {
-            fPeek = new TemplatePlaceholder(fPeek, field);
+            fPeek = new TemplatePlaceholder(parent, field, scope);
             if (fTop == null) {
                 fTop = (TemplatePlaceholder) fPeek;
+                if (fIncremental && !scope.isEmpty()) {
+                    fTop.fMarkers = fTopPanel.setPanelHtml(scope, fCloneMode);
+                }
             }
         } else {
-            fPeek = new Placeholder(fPeek, field);
+            fPeek = new Placeholder(parent, field);
+        }
+        TemplatePlaceholder root = parent != null ? parent.fDeferredRoot : null;
+        if (root == parent && !fPeek.fAccepted) {
+            // Fields rejected by the deferred container itself (like headers
+            // of disclosure panels) are not a part of the deferred content
+            root = null;
         }
+        if (root != null) {
+            fPeek.fDeferredRoot = root;
+            if (field != null) {
+                root.addDeferredField(field);
+            }
+        } else if (fLazyContent
+            && field instanceof DeferredTemplatePanelContainer
+            && ((DeferredTemplatePanelContainer) field)
+                .isTemplatePanelDeferred()) {
+            ((TemplatePlaceholder) fPeek).initDeferredRoot();
+        }
+    }
+
+    /**
+     * Sets the prototype-clone mode. If this flag is <code>true</code> then
+     * the HTML of each template scope is parsed only once and new panels
+     * receive deep copies of the resulting elements.
+     * 
+     * @param cloneMode the clone mode flag to set
+     */
+    public void setCloneMode(boolean cloneMode) {
+        fCloneMode = cloneMode;
+    }
+
+    /**
+     * Activates or deactivates the incremental mode. In this mode the static
+     * HTML of the template is shown in the panel before all fields are created
+     * and the widgets of top-level fields are inserted one by one as soon as
+     * they are finished.
+     * 
+     * @param incremental the flag to set
+     */
+    public void setIncremental(boolean incremental) {
+        fIncremental = incremental;
+    }
+
+    /**
+     * Activates or deactivates the lazy materialization of contents of
+     * containers implementing the {@link DeferredTemplatePanelContainer}
+     * interface (closed disclosure panels, hidden tabs...).
+     * 
+     * @param lazyContent the flag to set
+     */
+    public void setLazyContent(boolean lazyContent) {
+        fLazyContent = lazyContent;
     }
 
     /**
@@ -282,6 +490,9 @@ class TemplatePanelGenerator {
         fPeek.done();
         Placeholder parent = fPeek.getParent();
         fPeek = parent;
+        if (parent != null && parent == fTop && fTop.fMarkers != null) {
+            fTop.bindSlots();
+        }
     }
 
-}
\ No newline at end of file
+}
@@ -0,0 +1,311 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.templates;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * This is a pool of recyclable {@link TemplateTopPanel} instances keyed by
+ * template names. Panels are obtained using the {@link #acquire(String)}
+ * method; if there is no idle panel for the requested template then a new
+ * panel is built by the underlying {@link TemplatePanelBuilder}. Panels which
+ * are not used anymore should be returned to the pool using the
+ * {@link #release(TemplateTopPanel)} method; such panels are recycled (see
+ * {@link TemplateTopPanel#recycle()}) and handed out again on the next request.
+ * The number of idle panels is limited per template and globally; when a limit
+ * is exceeded the least recently released panel is evicted.
+ * 
+ * 
+ */
+public class TemplatePanelPool {
+
+    /**
+     * The default maximal number of idle panels for each template
+     */
+    public static final int DEFAULT_MAX_PER_TEMPLATE = 4;
+
+    /**
+     * The default maximal number of idle panels in the pool
+     */
+    public static final int DEFAULT_MAX_SIZE = 32;
+
+    /**
+     * The builder used to create new panels
+     */
+    private TemplatePanelBuilder fBuilder;
+
+    /**
+     * The number of evicted panels
+     */
+    private int fEvictionCount;
+
+    /**
+     * The number of requests served by an idle panel
+     */
+    private int fHitCount;
+
+    /**
+     * Idle panels ordered by their release time; the least recently released
+     * panel is the first one.
+     */
+    private List<TemplateTopPanel> fIdle = new ArrayList<TemplateTopPanel>();
+
+    /**
+     * Template names (keys) with the number of corresponding idle panels
+     * (values)
+     */
+    private Map<String, Integer> fIdleCounts = new HashMap<String, Integer>();
+
+    /**
+     * The maximal number of idle panels for each template
+     */
+    private int fMaxPerTemplate;
+
+    /**
+     * The maximal number of idle panels in the pool
+     */
+    private int fMaxSize;
+
+    /**
+     * The number of requests for which a new panel was built
+     */
+    private int fMissCount;
+
+    /**
+     * This constructor initializes the panel builder and uses default size
+     * limits.
+     * 
+     * @param builder the builder used to create new panels
+     */
+    public TemplatePanelPool(TemplatePanelBuilder builder) {
+        this(builder, DEFAULT_MAX_PER_TEMPLATE, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * This constructor initializes the panel builder and size limits of this
+     * pool.
+     * 
+     * @param builder the builder used to create new panels
+     * @param maxPerTemplate the maximal number of idle panels for each
+     *        template
+     * @param maxSize the maximal number of idle panels in the pool
+     */
+    public TemplatePanelPool(
+        TemplatePanelBuilder builder,
+        int maxPerTemplate,
+        int maxSize) {
+        fBuilder = builder;
+        fMaxPerTemplate = maxPerTemplate;
+        fMaxSize = maxSize;
+    }
+
+    /**
+     * Returns an idle panel corresponding to the specified template; if there
+     * is no such a panel then a new one is built. This method returns
+     * <code>null</code> if the template is not registered in the builder.
+     * 
+     * @param templateName the name of the template
+     * @return a panel corresponding to the given template
+     */
+    public TemplateTopPanel acquire(String templateName) {
+        for (int i = fIdle.size() - 1; i >= 0; i--) {
+            TemplateTopPanel panel = fIdle.get(i);
+            if (templateName.equals(panel.getTemplateName())) {
+                fIdle.remove(i);
+                changeIdleCount(templateName, -1);
+                fHitCount++;
+                return panel;
+            }
+        }
+        fMissCount++;
+        return fBuilder.buildPanel(templateName);
+    }
+
+    /**
+     * Changes the number of idle panels corresponding to the specified
+     * template and returns the new value
+     * 
+     * @param templateName the name of the template
+     * @param delta the value to add to the number of idle panels
+     * @return the new number of idle panels for the template
+     */
+    private int changeIdleCount(String templateName, int delta) {
+        Integer count = fIdleCounts.get(templateName);
+        int result = (count != null ? count.intValue() : 0) + delta;
+        if (result > 0) {
+            fIdleCounts.put(templateName, result);
+        } else {
+            fIdleCounts.remove(templateName);
+        }
+        return result;
+    }
+
+    /**
+     * Removes all idle panels from this pool
+     */
+    public void clear() {
+        fIdle.clear();
+        fIdleCounts.clear();
+    }
+
+    /**
+     * Removes all idle panels corresponding to the specified template. This
+     * method should be called when the template is modified or removed from
+     * the builder.
+     * 
+     * @param templateName the name of the template
+     */
+    public void clear(String templateName) {
+        Iterator<TemplateTopPanel> iterator = fIdle.iterator();
+        while (iterator.hasNext()) {
+            TemplateTopPanel panel = iterator.next();
+            if (templateName.equals(panel.getTemplateName())) {
+                iterator.remove();
+            }
+        }
+        fIdleCounts.remove(templateName);
+    }
+
+    /**
+     * Removes the least recently released panel of the specified template (or
+     * of any template if the given name is <code>null</code>)
+     * 
+     * @param templateName the name of the template or <code>null</code>
+     */
+    private void evict(String templateName) {
+        for (int i = 0; i < fIdle.size(); i++) {
+            TemplateTopPanel panel = fIdle.get(i);
+            String name = panel.getTemplateName();
+            if (templateName == null || templateName.equals(name)) {
+                fIdle.remove(i);
+                changeIdleCount(name, -1);
+                fEvictionCount++;
+                break;
+            }
+        }
+    }
+
+    /**
+     * Returns the number of idle panels evicted because of size limits
+     * 
+     * @return the number of evicted panels
+     */
+    public int getEvictionCount() {
+        return fEvictionCount;
+    }
+
+    /**
+     * Returns the number of requests served by an idle panel
+     * 
+     * @return the number of requests served by an idle panel
+     */
+    public int getHitCount() {
+        return fHitCount;
+    }
+
+    /**
+     * Returns the maximal number of idle panels for each template
+     * 
+     * @return the maximal number of idle panels for each template
+     */
+    public int getMaxPerTemplate() {
+        return fMaxPerTemplate;
+    }
+
+    /**
+     * Returns the maximal number of idle panels in this pool
+     * 
+     * @return the maximal number of idle panels in this pool
+     */
+    public int getMaxSize() {
+        return fMaxSize;
+    }
+
+    /**
+     * Returns the number of requests for which a new panel was built
+     * 
+     * @return the number of requests for which a new panel was built
+     */
+    public int getMissCount() {
+        return fMissCount;
+    }
+
+    /**
+     * Returns the number of idle panels in this pool
+     * 
+     * @return the number of idle panels in this pool
+     */
+    public int getSize() {
+        return fIdle.size();
+    }
+
+    /**
+     * Returns the given panel to this pool. The panel is recycled: the values
+     * of all fields are reset, listeners are detached and the panel is removed
+     * from its parent. Panels which were not built from a registered template
+     * are ignored.
+     * 
+     * @param panel the panel to release
+     */
+    public void release(TemplateTopPanel panel) {
+        String templateName = panel.getTemplateName();
+        if (templateName == null || fIdle.contains(panel))
+            return;
+        panel.recycle();
+        if (fMaxPerTemplate <= 0 || fMaxSize <= 0)
+            return;
+        if (changeIdleCount(templateName, 1) > fMaxPerTemplate) {
+            evict(templateName);
+        }
+        fIdle.add(panel);
+        if (fIdle.size() > fMaxSize) {
+            evict(null);
+        }
+    }
+
+    /**
+     * Resets all hit/miss/eviction counters of this pool
+     */
+    public void resetCounters() {
+        fHitCount = 0;
+        fMissCount = 0;
+        fEvictionCount = 0;
+    }
+
+    /**
+     * Sets new size limits of this pool. Idle panels exceeding new limits are
+     * evicted.
+     * 
+     * @param maxPerTemplate the maximal number of idle panels for each
+     *        template
+     * @param maxSize the maximal number of idle panels in the pool
+     */
+    public void setLimits(int maxPerTemplate, int maxSize) {
+        fMaxPerTemplate = maxPerTemplate;
+        fMaxSize = maxSize;
+        while (fIdle.size() > Math.max(fMaxSize, 0)) {
+            evict(null);
+        }
+        List<String> names = new ArrayList<String>(fIdleCounts.keySet());
+        for (String name : names) {
+            Integer count = fIdleCounts.get(name);
+            int n = count != null ? count.intValue() : 0;
+            for (; n > fMaxPerTemplate; n--) {
+                evict(name);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,29 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.templates;
+
+/**
+ * Instances of this type register pre-compiled templates in a
+ * {@link TemplatePanelBuilder}. Implementations of this interface are
+ * generated from XML templates at compile time (see {@link TemplateSource}).
+ * 
+ * 
+ */
+public interface TemplateProvider {
+
+    /**
+     * Registers all templates provided by this object in the given builder
+     * 
+     * @param builder the builder where templates should be registered
+     */
+    void addTemplates(TemplatePanelBuilder builder);
+
+}
@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.templates;
+
+import com.google.gwt.user.client.rpc.AsyncCallback;
+
+/**
+ * Instances of this type load templates which are not registered in a
+ * {@link TemplatePanelBuilder} yet. The builder uses the resolver to fetch
+ * missing templates on first use (see
+ * {@link TemplatePanelBuilder#buildPanel(String, AsyncCallback)}) and to
+ * prefetch templates during idle time (see
+ * {@link TemplatePanelBuilder#prefetchTemplates(java.util.Collection)}).
+ * 
+ * 
+ */
+public interface TemplateResolver {
+
+    /**
+     * Loads the template with the specified name, registers it in the builder
+     * and notifies the given callback.
+     * 
+     * @param templateName the name of the template to load
+     * @param callback the callback notified when the template is registered
+     *        or when it can not be loaded
+     */
+    void loadTemplate(String templateName, AsyncCallback<Void> callback);
+
+}
@@ -0,0 +1,137 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.templates;
+
+import com.google.gwt.user.client.DOM;
+import com.google.gwt.user.client.Element;
+
+/**
+ * This object contains the pre-merged HTML of one template scope - the content
+ * of a template or of a {@link TemplatePanelContainer} field. All static texts
+ * of the scope are merged together and each direct child field is replaced by
+ * a placeholder element ("slot") identified by the index of the child in the
+ * scope. This HTML is computed once when the template is compiled and it is
+ * used "as is" by all panels built from the template.
+ * 
+ * 
+ */
+final class TemplateScope {
+
+    /**
+     * The name of the attribute marking slot elements; the value of this
+     * attribute is the index of the slot in the scope
+     */
+    public static final String SLOT_ATTRIBUTE = "data-tmps";
+
+    /**
+     * Returns the index of the slot corresponding to the given value of the
+     * {@link #SLOT_ATTRIBUTE} attribute or -1 if the value does not
+     * correspond to a slot
+     * 
+     * @param value the value of the slot attribute
+     * @return the index of the slot corresponding to the given value
+     */
+    public static int getSlotIndex(String value) {
+        if (value == null || "".equals(value))
+            return -1;
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * Appends the placeholder element corresponding to the slot with the
+     * specified index to the given buffer
+     * 
+     * @param slot the index of the slot
+     * @param buf the buffer where the slot element is appended
+     */
+    public static void serializeSlot(int slot, StringBuffer buf) {
+        buf.append("<span ");
+        buf.append(SLOT_ATTRIBUTE);
+        buf.append("='");
+        buf.append(slot);
+        buf.append("'></span>");
+    }
+
+    /**
+     * The merged HTML of this scope
+     */
+    private final String fHtml;
+
+    /**
+     * The detached element containing the parsed HTML of this scope. It is
+     * created on demand and it is used as a prototype for new panels in the
+     * prototype-clone mode (see {@link #newContent()}).
+     */
+    private Element fPrototype;
+
+    /**
+     * The number of slots (direct child fields) in this scope
+     */
+    private final int fSlotCount;
+
+    /**
+     * This constructor initializes internal fields
+     * 
+     * @param html the merged HTML of this scope
+     * @param slotCount the number of slots in this scope
+     */
+    public TemplateScope(String html, int slotCount) {
+        fHtml = html;
+        fSlotCount = slotCount;
+    }
+
+    /**
+     * Returns the merged HTML of this scope
+     * 
+     * @return the merged HTML of this scope
+     */
+    public String getHtml() {
+        return fHtml;
+    }
+
+    /**
+     * Returns the number of slots (direct child fields) in this scope
+     * 
+     * @return the number of slots in this scope
+     */
+    public int getSlotCount() {
+        return fSlotCount;
+    }
+
+    /**
+     * Returns a new detached element containing a deep copy of the parsed
+     * HTML of this scope. The HTML is parsed only once; all subsequent calls
+     * clone the resulting prototype element.
+     * 
+     * @return a new element containing the content of this scope
+     */
+    public Element newContent() {
+        if (fPrototype == null) {
+            fPrototype = DOM.createDiv();
+            DOM.setInnerHTML(fPrototype, fHtml);
+        }
+        return DOM.clone(fPrototype, true);
+    }
+
+    /**
+     * Returns <code>true</code> if this scope does not contain any HTML
+     * 
+     * @return <code>true</code> if this scope is empty
+     */
+    public boolean isEmpty() {
+        return fHtml.length() == 0;
+    }
+
+}
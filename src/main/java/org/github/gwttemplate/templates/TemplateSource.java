@@ -0,0 +1,50 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.templates;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * This annotation declares XML documents with templates which should be
+ * compiled into Java code at compile time. For each annotated type the
+ * template annotation processor generates a {@link TemplateProvider}
+ * implementation named <code>&lt;TypeName&gt;_TemplateProvider</code> in the
+ * same package. This provider registers the compiled templates in a
+ * {@link TemplatePanelBuilder} without downloading and parsing template
+ * documents in the browser.
+ * 
+ * <pre>
+ * &#064;TemplateSource(&quot;forms.xml&quot;)
+ * public class Forms {
+ * }
+ * ...
+ * new Forms_TemplateProvider().addTemplates(builder);
+ * </pre>
+ * 
+ * 
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface TemplateSource {
+
+    /**
+     * Returns paths to XML documents with templates. Relative paths are
+     * resolved against the package of the annotated type; paths starting with
+     * "/" are resolved against the root of the source (or class) path.
+     * 
+     * @return paths to XML documents with templates
+     */
+    String[] value();
+
+}
@@ -10,12 +10,15 @@
  *******************************************************************************/
 package org.github.gwttemplate.templates;
 
+import java.util.AbstractMap;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
 import java.util.Set;
 
 import com.google.gwt.user.client.ui.ClickListener;
@@ -42,11 +45,68 @@ public class TemplateTopPanel extends TemplatePanel
     implements
     Iterable<FieldInfo<?>> {
 
+    /**
+     * This iterator gives a read-only access to the internal table of fields
+     * without copying it.
+     * 
+     * 
+     */
+    private class FieldIterator implements Iterator<FieldInfo<?>> {
+
+        /**
+         * The position of the next field in the table
+         */
+        private int fPos;
+
+        /**
+         * @see java.util.Iterator#hasNext()
+         */
+        public boolean hasNext() {
+            return fPos < fFieldCount;
+        }
+
+        /**
+         * @see java.util.Iterator#next()
+         */
+        public FieldInfo<?> next() {
+            if (fPos >= fFieldCount)
+                throw new NoSuchElementException();
+            return fFields[fPos++];
+        }
+
+        /**
+         * @see java.util.Iterator#remove()
+         */
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+    }
+
     /**
      * Container of cancel listeners
      */
     private ClickListenerCollection fCancelListeners;
 
+    /**
+     * Click listeners added to fields using the
+     * {@link #addClickListener(String, ClickListener)} method. Each entry
+     * contains the name of the field and the listener itself. This list is
+     * used to detach listeners when this panel is recycled.
+     */
+    private List<Map.Entry<String, ClickListener>> fClickListeners;
+
+    /**
+     * The number of fields in the {@link #fFields} table
+     */
+    private int fFieldCount;
+
+    /**
+     * The dense table of all fields in the registration order. Only the first
+     * {@link #fFieldCount} elements of this array are used.
+     */
+    private FieldInfo<?>[] fFields = new FieldInfo<?>[16];
+
     /**
      * This map contains field names (keys) and lists of corresponding
      * {@link FieldInfo} objects (values).
@@ -58,11 +118,31 @@ public class TemplateTopPanel extends TemplatePanel
      */
     private TemplatePanelBuilder fPanelBuilder;
 
+    /**
+     * The keyboard listener added to field widgets to activate submit
+     * listeners
+     */
+    private KeyboardListener fSubmitKeyboardListener;
+
     /**
      * Container of submit listeners
      */
     private ClickListenerCollection fSubmitListeners;
 
+    /**
+     * The name of the template used to build this panel; it can be
+     * <code>null</code> if this panel was not created by a
+     * {@link TemplatePanelBuilder}.
+     */
+    private String fTemplateName;
+
+    /**
+     * The identity index of widgets (keys) and the corresponding fields
+     * (values). Widgets are added to this index when they are created by
+     * fields (see {@link FieldInfo#getWidget()}).
+     */
+    private Map<Widget, FieldInfo<?>> fWidgetIndex = new IdentityHashMap<Widget, FieldInfo<?>>();
+
     /**
      * The default constructor.
      * 
@@ -81,10 +161,8 @@ public class TemplateTopPanel extends TemplatePanel
      * @param visitor the visitor
      */
     public void accept(FieldInfoVIsitor visitor) {
-        for (List<FieldInfo<?>> fields : fFieldInfoMap.values()) {
-            for (FieldInfo<?> field : fields) {
-                visitor.visit(field);
-            }
+        for (int i = 0; i < fFieldCount; i++) {
+            visitor.visit(fFields[i]);
         }
     }
 
@@ -112,11 +190,20 @@ public class TemplateTopPanel extends TemplatePanel
         List<FieldInfo<?>> fields = getFieldInfo(name);
         if (fields != null) {
             for (FieldInfo<?> field : fields) {
+                if (field.isDeferred())
+                    continue;
                 Widget widget = field.getWidget();
                 if (widget instanceof SourcesClickEvents) {
                     ((SourcesClickEvents) widget).addClickListener(listener);
                 }
             }
+            if (fClickListeners == null) {
+                fClickListeners = new ArrayList<Map.Entry<String, ClickListener>>();
+            }
+            fClickListeners
+                .add(new AbstractMap.SimpleImmutableEntry<String, ClickListener>(
+                    name,
+                    listener));
         }
     }
 
@@ -144,42 +231,50 @@ public class TemplateTopPanel extends TemplatePanel
     public void addSubmitListener(ClickListener listener) {
         if (fSubmitListeners == null) {
             fSubmitListeners = new ClickListenerCollection();
-            KeyboardListener keyboardListener = null;
-            for (List<FieldInfo<?>> fields : fFieldInfoMap.values()) {
-                for (FieldInfo<?> field : fields) {
-                    Widget widget = field.getWidget();
-                    if (widget instanceof SourcesKeyboardEvents
-                        && !(widget instanceof TextArea)) {
-                        if (keyboardListener == null) {
-                            keyboardListener = new KeyboardListenerAdapter() {
-                                @Override
-                                public void onKeyPress(
-                                    Widget sender,
-                                    char keyCode,
-                                    int modifiers) {
-                                    if (keyCode == KEY_ENTER) {
-                                        onSubmit(sender);
-                                    }
-                                }
-                            };
-                        }
-                        ((SourcesKeyboardEvents) widget)
-                            .addKeyboardListener(keyboardListener);
-                    }
+            for (int i = 0; i < fFieldCount; i++) {
+                FieldInfo<?> field = fFields[i];
+                if (!field.isDeferred()) {
+                    addSubmitKeyboardListener(field);
                 }
             }
         }
         fSubmitListeners.add(listener);
     }
 
+    /**
+     * Adds the keyboard listener activating submit listeners to the widget of
+     * the given field (if this widget is a source of keyboard events)
+     * 
+     * @param field the field to which the keyboard listener should be added
+     */
+    private void addSubmitKeyboardListener(FieldInfo<?> field) {
+        Widget widget = field.getWidget();
+        if (widget instanceof SourcesKeyboardEvents
+            && !(widget instanceof TextArea)) {
+            if (fSubmitKeyboardListener == null) {
+                fSubmitKeyboardListener = new KeyboardListenerAdapter() {
+                    @Override
+                    public void onKeyPress(
+                        Widget sender,
+                        char keyCode,
+                        int modifiers) {
+                        if (keyCode == KEY_ENTER) {
+                            onSubmit(sender);
+                        }
+                    }
+                };
+            }
+            ((SourcesKeyboardEvents) widget)
+                .addKeyboardListener(fSubmitKeyboardListener);
+        }
+    }
+
     /**
      * Cleans up all internal fields
      */
     public void clear() {
-        for (List<FieldInfo<?>> fields : fFieldInfoMap.values()) {
-            for (FieldInfo<?> field : fields) {
-                field.clear();
-            }
+        for (int i = 0; i < fFieldCount; i++) {
+            fFields[i].clearValue();
         }
     }
 
@@ -198,7 +293,7 @@ public class TemplateTopPanel extends TemplatePanel
             if (children) {
                 FieldInfoVIsitor visitor = new FieldInfoVisitorImpl() {
                     public void visit(FieldInfo<?> info) {
-                        info.clear();
+                        info.clearValue();
                         visitChildren(info);
                     }
                 };
@@ -207,7 +302,7 @@ public class TemplateTopPanel extends TemplatePanel
                 }
             } else {
                 for (FieldInfo<?> field : fields) {
-                    field.clear();
+                    field.clearValue();
                 }
             }
         }
@@ -250,16 +345,9 @@ public class TemplateTopPanel extends TemplatePanel
      * @return a field with the specified name containing the given widget
      */
     public FieldInfo<?> getFieldByWidget(String name, Widget widget) {
-        FieldInfo<?> result = null;
-        List<FieldInfo<?>> fields = getFieldInfo(name);
-        if (fields != null) {
-            for (FieldInfo<?> field : fields) {
-                Widget w = field.getWidget();
-                if (widget != w)
-                    continue;
-                result = field;
-                break;
-            }
+        FieldInfo<?> result = getFieldByWidget(widget);
+        if (result != null && !result.getName().equals(name)) {
+            result = null;
         }
         return result;
     }
@@ -271,14 +359,7 @@ public class TemplateTopPanel extends TemplatePanel
      * @return a field containing the given widget
      */
     public FieldInfo<?> getFieldByWidget(Widget widget) {
-        Set<String> names = getFieldNames();
-        FieldInfo<?> result = null;
-        for (String name : names) {
-            result = getFieldByWidget(name, widget);
-            if (result != null)
-                break;
-        }
-        return result;
+        return fWidgetIndex.get(widget);
     }
 
     /**
@@ -325,7 +406,7 @@ public class TemplateTopPanel extends TemplatePanel
             return null;
         Object result = null;
         for (FieldInfo<?> field : list) {
-            result = field.getValue();
+            result = field.readValue();
             if (result != null)
                 break;
         }
@@ -346,7 +427,7 @@ public class TemplateTopPanel extends TemplatePanel
         int len = fields.size();
         List<Object> result = new ArrayList<Object>(len);
         for (FieldInfo<?> field : fields) {
-            Collection<Object> values = field.getValues();
+            Collection<Object> values = field.readValues();
             if (values != null) {
                 result.addAll(values);
             }
@@ -403,18 +484,61 @@ public class TemplateTopPanel extends TemplatePanel
     }
 
     /**
-     * Returns an iterator over all field wrappers in this panels
+     * Returns the name of the template used to build this panel
+     * 
+     * @return the name of the template used to build this panel or
+     *         <code>null</code> if this panel was not built from a template
+     */
+    public String getTemplateName() {
+        return fTemplateName;
+    }
+
+    /**
+     * Adds the widget of the given field to the identity index of widgets.
+     * This method is called when the field creates its widget.
+     * 
+     * @param field the field to index
+     */
+    void indexWidget(FieldInfo<?> field) {
+        if (field.hasWidget()) {
+            fWidgetIndex.put(field.getWidget(), field);
+        }
+    }
+
+    /**
+     * Returns the number of all fields in this panel
+     * 
+     * @return the number of all fields in this panel
+     */
+    public int getFieldCount() {
+        return fFieldCount;
+    }
+
+    /**
+     * Returns the field with the specified index; fields are indexed in the
+     * order of their registration
+     * 
+     * @param index the index of the field
+     * @return the field with the specified index
+     */
+    public FieldInfo<?> getFieldInfo(int index) {
+        if (index < 0 || index >= fFieldCount)
+            throw new IndexOutOfBoundsException("Index: "
+                + index
+                + ", Size: "
+                + fFieldCount);
+        return fFields[index];
+    }
+
+    /**
+     * Returns an iterator over all field wrappers in this panels. The returned
+     * iterator is a read-only view of the internal field table; fields are
+     * returned in the order of their registration.
      * 
      * @see java.lang.Iterable#iterator()
      */
     public Iterator<FieldInfo<?>> iterator() {
-        List<FieldInfo<?>> list = new ArrayList<FieldInfo<?>>();
-        for (List<FieldInfo<?>> fields : fFieldInfoMap.values()) {
-            for (FieldInfo<?> field : fields) {
-                list.add(field);
-            }
-        }
-        return list.iterator();
+        return new FieldIterator();
     }
 
     /**
@@ -430,6 +554,35 @@ public class TemplateTopPanel extends TemplatePanel
         }
     }
 
+    /**
+     * This method is called when a deferred field is materialized (see
+     * {@link DeferredTemplatePanelContainer}). It attaches to the widget of
+     * the field all listeners registered in this panel while the field was
+     * deferred.
+     * 
+     * @param field the materialized field
+     */
+    void onFieldMaterialized(FieldInfo<?> field) {
+        if (fSubmitListeners != null) {
+            addSubmitKeyboardListener(field);
+        }
+        if (fClickListeners != null) {
+            String name = field.getName();
+            Widget widget = null;
+            for (Map.Entry<String, ClickListener> entry : fClickListeners) {
+                if (!name.equals(entry.getKey()))
+                    continue;
+                if (widget == null) {
+                    widget = field.getWidget();
+                }
+                if (widget instanceof SourcesClickEvents) {
+                    ((SourcesClickEvents) widget).addClickListener(entry
+                        .getValue());
+                }
+            }
+        }
+    }
+
     /**
      * This method is called to notify that the operations in this form was
      * submitted.
@@ -456,6 +609,13 @@ public class TemplateTopPanel extends TemplatePanel
             fFieldInfoMap.put(name, fields);
         }
         fields.add(field);
+        if (fFieldCount == fFields.length) {
+            FieldInfo<?>[] array = new FieldInfo<?>[fFields.length * 2];
+            System.arraycopy(fFields, 0, array, 0, fFieldCount);
+            fFields = array;
+        }
+        fFields[fFieldCount++] = field;
+        indexWidget(field);
     }
 
     /**
@@ -481,12 +641,25 @@ public class TemplateTopPanel extends TemplatePanel
         List<FieldInfo<?>> fields = getFieldInfo(name);
         if (fields != null) {
             for (FieldInfo<?> field : fields) {
+                if (field.isDeferred())
+                    continue;
                 Widget widget = field.getWidget();
                 if (widget instanceof SourcesClickEvents) {
                     ((SourcesClickEvents) widget).removeClickListener(listener);
                 }
             }
         }
+        if (fClickListeners != null) {
+            Iterator<Map.Entry<String, ClickListener>> iterator = fClickListeners
+                .iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<String, ClickListener> entry = iterator.next();
+                if (entry.getValue() == listener
+                    && entry.getKey().equals(name)) {
+                    iterator.remove();
+                }
+            }
+        }
     }
 
     /**
@@ -519,14 +692,38 @@ public class TemplateTopPanel extends TemplatePanel
         }
     }
 
+    /**
+     * Prepares this panel to be reused: resets the values of all fields,
+     * detaches all cancel, submit and field click listeners and removes this
+     * panel from its parent. This method is called by
+     * {@link TemplatePanelPool} when the panel is released.
+     */
+    public void recycle() {
+        reset();
+        if (fClickListeners != null) {
+            List<Map.Entry<String, ClickListener>> listeners = fClickListeners;
+            fClickListeners = null;
+            for (Map.Entry<String, ClickListener> entry : listeners) {
+                removeClickListener(entry.getKey(), entry.getValue());
+            }
+        }
+        if (fCancelListeners != null) {
+            fCancelListeners.clear();
+        }
+        if (fSubmitListeners != null) {
+            // The keyboard listener of fields is kept; it notifies only
+            // listeners registered in this (now empty) collection
+            fSubmitListeners.clear();
+        }
+        removeFromParent();
+    }
+
     /**
      * Resets the values of all fields.
      */
     public void reset() {
-        for (List<FieldInfo<?>> fields : fFieldInfoMap.values()) {
-            for (FieldInfo<?> field : fields) {
-                field.clear();
-            }
+        for (int i = 0; i < fFieldCount; i++) {
+            fFields[i].clearValue();
         }
     }
 
@@ -537,8 +734,8 @@ public class TemplateTopPanel extends TemplatePanel
      *        to disabled
      */
     public void setEnabled(boolean enabled) {
-        for (List<FieldInfo<?>> fields : fFieldInfoMap.values()) {
-            setEnabled(fields, enabled);
+        for (int i = 0; i < fFieldCount; i++) {
+            fFields[i].changeEnabled(enabled);
         }
     }
 
@@ -553,7 +750,7 @@ public class TemplateTopPanel extends TemplatePanel
         if (fields == null)
             return;
         for (FieldInfo<?> field : fields) {
-            field.setEnabled(enabled);
+            field.changeEnabled(enabled);
         }
     }
 
@@ -596,7 +793,7 @@ public class TemplateTopPanel extends TemplatePanel
             return false;
         boolean result = false;
         for (FieldInfo<?> field : fields) {
-            result = field.setValue(value);
+            result = field.writeValue(value);
             if (result)
                 break;
         }
@@ -622,6 +819,15 @@ public class TemplateTopPanel extends TemplatePanel
         return values;
     }
 
+    /**
+     * Sets the name of the template used to build this panel
+     * 
+     * @param templateName the name of the template to set
+     */
+    void setTemplateName(String templateName) {
+        fTemplateName = templateName;
+    }
+
     /**
      * Shows/hides all fields with the specified name and returns
      * <code>true</code> if the specified visibility flag was successfully
@@ -708,5 +914,20 @@ public class TemplateTopPanel extends TemplatePanel
                 fFieldInfoMap.remove(name);
             }
         }
+        for (int i = fFieldCount - 1; i >= 0; i--) {
+            if (fFields[i] == field) {
+                System.arraycopy(fFields, i + 1, fFields, i, fFieldCount
+                    - i
+                    - 1);
+                fFields[--fFieldCount] = null;
+                break;
+            }
+        }
+        if (field.hasWidget()) {
+            Widget widget = field.getWidget();
+            if (fWidgetIndex.get(widget) == field) {
+                fWidgetIndex.remove(widget);
+            }
+        }
     }
 }
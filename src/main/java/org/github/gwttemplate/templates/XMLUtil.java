@@ -34,7 +34,7 @@ public class XMLUtil {
      * @param e the value to escape
      * @param buf the buffer where the escaped value should be appended
      */
-    static void escape(String e, StringBuffer buf) {
+    public static void escape(String e, StringBuffer buf) {
         char[] array = e.toCharArray();
         for (int i = 0; i < array.length; i++) {
             char ch = array[i];
@@ -0,0 +1,228 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.templates.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * This is a "compiled" form of a cache tree. The tree of
+ * {@link CompositeCacheNode} and {@link TextCacheNode} objects is transformed
+ * into a flat sequence of instructions ({@link #TEXT}, {@link #BEGIN_FIELD}
+ * and {@link #END_FIELD}). Each instruction has an operand which is an index
+ * in the table of texts (for {@link #TEXT} instructions) or in the table of
+ * composite nodes (for {@link #BEGIN_FIELD} / {@link #END_FIELD}
+ * instructions). Such a program can be executed by a simple loop without
+ * recursion and without visitors.
+ * 
+ * 
+ */
+public class CacheProgram {
+
+    /**
+     * This visitor transforms a cache tree into a sequence of instructions.
+     */
+    private static class Compiler implements CacheNodeVisitor {
+
+        /**
+         * Instruction codes
+         */
+        private List<Integer> fCodes = new ArrayList<Integer>();
+
+        /**
+         * Composite nodes referenced by instructions
+         */
+        private List<CompositeCacheNode> fNodes = new ArrayList<CompositeCacheNode>();
+
+        /**
+         * Instruction operands
+         */
+        private List<Integer> fOperands = new ArrayList<Integer>();
+
+        /**
+         * Texts referenced by instructions
+         */
+        private List<String> fTexts = new ArrayList<String>();
+
+        /**
+         * Adds a new instruction to the program
+         * 
+         * @param code the code of the instruction
+         * @param operand the operand of the instruction
+         */
+        private void add(int code, int operand) {
+            fCodes.add(code);
+            fOperands.add(operand);
+        }
+
+        /**
+         * Returns the resulting program
+         * 
+         * @return the resulting program
+         */
+        public CacheProgram getProgram() {
+            int len = fCodes.size();
+            int[] codes = new int[len];
+            int[] operands = new int[len];
+            for (int i = 0; i < len; i++) {
+                codes[i] = fCodes.get(i);
+                operands[i] = fOperands.get(i);
+            }
+            String[] texts = fTexts.toArray(new String[fTexts.size()]);
+            CompositeCacheNode[] nodes = fNodes
+                .toArray(new CompositeCacheNode[fNodes.size()]);
+            return new CacheProgram(codes, operands, texts, nodes);
+        }
+
+        /**
+         * @see CacheNodeVisitor#visit(CompositeCacheNode)
+         */
+        public void visit(CompositeCacheNode node) {
+            int idx = fNodes.size();
+            fNodes.add(node);
+            add(BEGIN_FIELD, idx);
+            for (CacheNode child : node) {
+                child.accept(this);
+            }
+            add(END_FIELD, idx);
+        }
+
+        /**
+         * @see CacheNodeVisitor#visit(TextCacheNode)
+         */
+        public void visit(TextCacheNode node) {
+            int idx = fTexts.size();
+            fTexts.add(node.getText());
+            add(TEXT, idx);
+        }
+
+    }
+
+    /**
+     * The instruction marking the beginning of a composite node. The operand
+     * is the index of the node in the node table.
+     */
+    public static final int BEGIN_FIELD = 1;
+
+    /**
+     * The instruction marking the end of a composite node. The operand is the
+     * index of the node in the node table.
+     */
+    public static final int END_FIELD = 2;
+
+    /**
+     * The instruction appending a static text. The operand is the index of
+     * the text in the text table.
+     */
+    public static final int TEXT = 0;
+
+    /**
+     * Compiles the given cache tree into a flat program.
+     * 
+     * @param top the topmost node of the cache tree
+     * @return a program corresponding to the given cache tree
+     */
+    public static CacheProgram compile(CompositeCacheNode top) {
+        Compiler compiler = new Compiler();
+        top.accept(compiler);
+        return compiler.getProgram();
+    }
+
+    /**
+     * Instruction codes
+     */
+    private final int[] fCodes;
+
+    /**
+     * The table of composite nodes
+     */
+    private final CompositeCacheNode[] fNodes;
+
+    /**
+     * Instruction operands
+     */
+    private final int[] fOperands;
+
+    /**
+     * The table of static texts
+     */
+    private final String[] fTexts;
+
+    /**
+     * This constructor initializes the internal tables of this program
+     * 
+     * @param codes instruction codes
+     * @param operands instruction operands
+     * @param texts the table of static texts
+     * @param nodes the table of composite nodes
+     */
+    private CacheProgram(
+        int[] codes,
+        int[] operands,
+        String[] texts,
+        CompositeCacheNode[] nodes) {
+        fCodes = codes;
+        fOperands = operands;
+        fTexts = texts;
+        fNodes = nodes;
+    }
+
+    /**
+     * Returns instruction codes of this program. The returned array should not
+     * be modified.
+     * 
+     * @return instruction codes
+     */
+    public int[] getCodes() {
+        return fCodes;
+    }
+
+    /**
+     * Returns the number of instructions in this program
+     * 
+     * @return the number of instructions in this program
+     */
+    public int getLength() {
+        return fCodes.length;
+    }
+
+    /**
+     * Returns the table of composite nodes referenced by
+     * {@link #BEGIN_FIELD} / {@link #END_FIELD} instructions. The returned
+     * array should not be modified.
+     * 
+     * @return the table of composite nodes
+     */
+    public CompositeCacheNode[] getNodes() {
+        return fNodes;
+    }
+
+    /**
+     * Returns instruction operands of this program. The returned array should
+     * not be modified.
+     * 
+     * @return instruction operands
+     */
+    public int[] getOperands() {
+        return fOperands;
+    }
+
+    /**
+     * Returns the table of static texts referenced by {@link #TEXT}
+     * instructions. The returned array should not be modified.
+     * 
+     * @return the table of static texts
+     */
+    public String[] getTexts() {
+        return fTexts;
+    }
+
+}
@@ -40,7 +40,7 @@ public class CompositeCacheNode extends CacheNode
      * 
      * @param node the node to add
      */
-    void addNode(CacheNode node) {
+    protected void addNode(CacheNode node) {
         fList.add(node);
     }
 
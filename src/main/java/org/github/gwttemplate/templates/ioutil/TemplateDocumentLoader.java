@@ -0,0 +1,105 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.templates.ioutil;
+
+import java.util.List;
+
+import org.github.gwttemplate.commons.io.AbstractResourceLoader;
+import org.github.gwttemplate.commons.io.ResourceCache;
+import org.github.gwttemplate.commons.io.ResourceLoaderException;
+import org.github.gwttemplate.templates.TemplatePanelBuilder;
+
+import com.google.gwt.http.client.Request;
+import com.google.gwt.http.client.Response;
+
+/**
+ * This loader loads a template document (or a template bundle) and registers
+ * all templates in the given builder in one step. Unlike the
+ * {@link org.github.gwttemplate.commons.io.XMLLoader} it does not return the
+ * parsed document: templates are compiled as soon as the response is parsed
+ * (see {@link TemplatePanelBuilder#compileTemplates(String)}) and the
+ * document is dropped immediately. Callbacks receive names of registered
+ * templates.
+ * <p>
+ * Loaded templates are registered as a side effect, so this loader does not
+ * use response caches and it does not coalesce its requests with the
+ * requests of other loaders.
+ * </p>
+ * 
+ * 
+ */
+public class TemplateDocumentLoader extends AbstractResourceLoader<List<String>> {
+
+    /**
+     * The builder where templates are registered
+     */
+    private TemplatePanelBuilder fBuilder;
+
+    /**
+     * @param builder the builder where templates are registered
+     * @param path the path of the template document relative to the current
+     *        application module
+     */
+    public TemplateDocumentLoader(TemplatePanelBuilder builder, String path) {
+        super(path);
+        init(builder);
+    }
+
+    /**
+     * @param builder the builder where templates are registered
+     * @param baseURL the base URL used to build the full URL
+     * @param path the local path relative to the base URL
+     */
+    public TemplateDocumentLoader(
+        TemplatePanelBuilder builder,
+        String baseURL,
+        String path) {
+        super(baseURL, path);
+        init(builder);
+    }
+
+    /**
+     * Results of this loader are side effects on the builder, so they are
+     * never cached
+     * 
+     * @see org.github.gwttemplate.commons.io.AbstractResourceLoader#getCache()
+     */
+    @Override
+    public ResourceCache getCache() {
+        return null;
+    }
+
+    /**
+     * Parses the loaded text and registers all templates in the builder
+     * 
+     * @see org.github.gwttemplate.commons.io.AbstractResourceLoader#getResult(com.google.gwt.http.client.Request,
+     *      com.google.gwt.http.client.Response)
+     */
+    @Override
+    protected List<String> getResult(Request request, Response response)
+        throws ResourceLoaderException {
+        int statusCode = response.getStatusCode();
+        if (statusCode != 200)
+            throw new ResourceLoaderException(request, response);
+        return fBuilder.compileTemplates(response.getText());
+    }
+
+    /**
+     * Initializes the internal fields
+     * 
+     * @param builder the builder where templates are registered
+     */
+    private void init(TemplatePanelBuilder builder) {
+        fBuilder = builder;
+        setCoalescing(false);
+    }
+
+}
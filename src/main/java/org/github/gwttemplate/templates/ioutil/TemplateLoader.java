@@ -7,13 +7,15 @@ import java.util.List;
 
 import org.github.gwttemplate.commons.io.ResourceLoader;
 import org.github.gwttemplate.commons.io.ResourceLoaderBarrier;
-import org.github.gwttemplate.commons.io.XMLLoader;
+import org.github.gwttemplate.commons.io.TextLoader;
 import org.github.gwttemplate.templates.FieldI18NImpl;
+import org.github.gwttemplate.templates.TemplateBundle;
 import org.github.gwttemplate.templates.TemplatePanelBuilder;
 
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
 import com.google.gwt.http.client.Response;
 import com.google.gwt.user.client.rpc.AsyncCallback;
-import com.google.gwt.xml.client.Document;
 
 /**
  * Template loader class is used to asynchroniously load templates and
@@ -28,6 +30,12 @@ public class TemplateLoader {
      */
     private TemplatePanelBuilder fBuilder;
 
+    /**
+     * The persistent store of loaded resources; it is <code>null</code> if
+     * resources should not be stored
+     */
+    private TemplateStore fStore;
+
     /**
      * The constructor initializing internal field.
      * 
@@ -38,6 +46,39 @@ public class TemplateLoader {
         fBuilder = builder;
     }
 
+    /**
+     * Registers the given internationalization messages in the builder and
+     * stores them
+     * 
+     * @param i18n the path of the internationalization file
+     * @param hash the hash of the file; it can be <code>null</code>
+     * @param text the content of the internationalization file
+     */
+    private void addConstants(String i18n, String hash, String text) {
+        FieldI18NImpl constants = new FieldI18NImpl(text);
+        fBuilder.setConstants(constants);
+        if (fStore != null && hash != null) {
+            fStore.put(i18n, hash, text);
+        }
+    }
+
+    /**
+     * Registers templates from the given text (an XML document or a template
+     * bundle) in the builder and stores them as a compiled template bundle
+     * 
+     * @param templates the path of the template file
+     * @param hash the hash of the file; it can be <code>null</code>
+     * @param text the content of the template file
+     */
+    private void addTemplates(String templates, String hash, String text) {
+        List<String> names = fBuilder.compileTemplates(text);
+        if (fStore != null && hash != null) {
+            String bundle = TemplateBundle.isBundle(text) ? text : fBuilder
+                .getTemplateBundle(names);
+            fStore.put(templates, hash, bundle);
+        }
+    }
+
     /**
      * Returns the internal template builder object
      * 
@@ -47,18 +88,29 @@ public class TemplateLoader {
         return fBuilder;
     }
 
+    /**
+     * Returns the persistent store of loaded resources
+     * 
+     * @return the persistent store of loaded resources or <code>null</code>
+     */
+    public TemplateStore getStore() {
+        return fStore;
+    }
+
     /**
      * This method loads the given internationalization and template files and
      * activates the internal template builder using this information.
      * 
      * @param i18n the name of the internationalization file to load
-     * @param templates the name of the XML template file to load
+     * @param templates the name of the template file to load; it can be an
+     *        XML document or a pre-compiled template bundle (see
+     *        {@link org.github.gwttemplate.templates.TemplateBundle})
      * @param callback the callback used to notify when the internationalization
      *        file and templates are loaded
      */
     public void load(
-        String i18n,
-        String templates,
+        final String i18n,
+        final String templates,
         final AsyncCallback<TemplatePanelBuilder> callback) {
         final ResourceLoaderBarrier barrier = new ResourceLoaderBarrier() {
             @Override
@@ -76,19 +128,146 @@ public class TemplateLoader {
 
             public void onSuccess(Response response) {
                 String text = response.getText();
-                FieldI18NImpl constants = new FieldI18NImpl(text);
-                fBuilder.setConstants(constants);
+                addConstants(i18n, null, text);
             }
         });
-        barrier.add(new XMLLoader(templates), new AsyncCallback<Document>() {
+        barrier.add(
+            new TemplateDocumentLoader(fBuilder, templates),
+            new AsyncCallback<List<String>>() {
+                public void onFailure(Throwable caught) {
+                    callback.onFailure(caught);
+                }
+
+                public void onSuccess(List<String> names) {
+                }
+            });
+        barrier.load();
+    }
+
+    /**
+     * This method loads the given internationalization and template files
+     * using the persistent store (see {@link #setStore(TemplateStore)}). The
+     * given manifest file is loaded first; it contains the paths of resources
+     * with their content hashes (or versions) in the same key/value format as
+     * internationalization files ("path=hash"). Resources with the same hash
+     * in the store are taken from there without any network access or XML
+     * parsing; other resources are loaded from the server and stored. Loaded
+     * XML templates are stored as compiled template bundles. If the manifest
+     * can not be loaded then all resources are loaded from the server.
+     * 
+     * @param manifest the name of the manifest file
+     * @param i18n the name of the internationalization file to load
+     * @param templates the name of the template file to load
+     * @param callback the callback used to notify when the internationalization
+     *        file and templates are loaded
+     */
+    public void load(
+        String manifest,
+        final String i18n,
+        final String templates,
+        final AsyncCallback<TemplatePanelBuilder> callback) {
+        if (fStore == null || !fStore.isSupported()) {
+            load(i18n, templates, callback);
+            return;
+        }
+        new TextLoader(manifest).load(new AsyncCallback<String>() {
             public void onFailure(Throwable caught) {
-                callback.onFailure(caught);
+                load(i18n, templates, callback);
             }
 
-            public void onSuccess(Document doc) {
-                fBuilder.addTemplates(doc);
+            public void onSuccess(String text) {
+                FieldI18NImpl hashes = new FieldI18NImpl(text);
+                load(
+                    i18n,
+                    hashes.getString(i18n),
+                    templates,
+                    hashes.getString(templates),
+                    callback);
             }
         });
-        barrier.load();
+    }
+
+    /**
+     * Loads the given internationalization and template files; resources with
+     * the specified hashes are taken from the store. The callback is always
+     * notified asynchronously, even if all resources are taken from the store.
+     * 
+     * @param i18n the name of the internationalization file to load
+     * @param i18nHash the expected hash of the internationalization file
+     * @param templates the name of the template file to load
+     * @param templatesHash the expected hash of the template file
+     * @param callback the callback used to notify when the internationalization
+     *        file and templates are loaded
+     */
+    private void load(
+        final String i18n,
+        final String i18nHash,
+        final String templates,
+        final String templatesHash,
+        final AsyncCallback<TemplatePanelBuilder> callback) {
+        final ResourceLoaderBarrier barrier = new ResourceLoaderBarrier() {
+            @Override
+            protected void onFinish(
+                List<Object> successList,
+                List<Throwable> failureList) {
+                callback.onSuccess(fBuilder);
+            }
+        };
+        boolean empty = true;
+        String constants = fStore.get(i18n, i18nHash);
+        if (constants != null) {
+            fBuilder.setConstants(new FieldI18NImpl(constants));
+        } else {
+            empty = false;
+            barrier.add(new TextLoader(i18n), new AsyncCallback<String>() {
+                public void onFailure(Throwable caught) {
+                    callback.onFailure(caught);
+                }
+
+                public void onSuccess(String text) {
+                    addConstants(i18n, i18nHash, text);
+                }
+            });
+        }
+        String bundle = fStore.get(templates, templatesHash);
+        if (bundle != null) {
+            try {
+                fBuilder.addTemplates(bundle);
+            } catch (IllegalArgumentException e) {
+                fStore.remove(templates);
+                bundle = null;
+            }
+        }
+        if (bundle == null) {
+            empty = false;
+            barrier.add(new TextLoader(templates), new AsyncCallback<String>() {
+                public void onFailure(Throwable caught) {
+                    callback.onFailure(caught);
+                }
+
+                public void onSuccess(String text) {
+                    addTemplates(templates, templatesHash, text);
+                }
+            });
+        }
+        if (empty) {
+            Scheduler.get().scheduleDeferred(new ScheduledCommand() {
+                public void execute() {
+                    callback.onSuccess(fBuilder);
+                }
+            });
+        } else {
+            barrier.load();
+        }
+    }
+
+    /**
+     * Sets the persistent store of loaded resources used by the
+     * {@link #load(String, String, String, AsyncCallback)} method
+     * 
+     * @param store the store to set
+     */
+    public void setStore(TemplateStore store) {
+        fStore = store;
     }
 }
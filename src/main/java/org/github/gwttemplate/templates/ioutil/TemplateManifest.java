@@ -0,0 +1,204 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.templates.ioutil;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.github.gwttemplate.commons.io.TextLoader;
+import org.github.gwttemplate.templates.FieldI18NImpl;
+import org.github.gwttemplate.templates.TemplatePanelBuilder;
+import org.github.gwttemplate.templates.TemplateResolver;
+
+import com.google.gwt.core.client.GWT;
+import com.google.gwt.user.client.rpc.AsyncCallback;
+
+/**
+ * This template resolver loads templates on demand using a manifest mapping
+ * template names to paths of template documents (or bundles). The manifest
+ * uses the same key/value format as internationalization files
+ * ("name=path"); paths are relative to the base URL of the manifest. Several
+ * templates can be mapped to the same document; the document is loaded only
+ * once and all its templates are registered.
+ * 
+ * <pre>
+ * TemplateManifest manifest = new TemplateManifest(builder);
+ * manifest.load(&quot;templates.manifest&quot;, callback);
+ * ...
+ * builder.buildPanel(&quot;main&quot;, panelCallback);
+ * builder.prefetchTemplates(Arrays.asList(&quot;details&quot;));
+ * </pre>
+ * 
+ * 
+ */
+public class TemplateManifest implements TemplateResolver {
+
+    /**
+     * The base URL of template documents
+     */
+    private String fBaseURL;
+
+    /**
+     * The builder where templates are registered
+     */
+    private TemplatePanelBuilder fBuilder;
+
+    /**
+     * Template names with the corresponding document paths
+     */
+    private FieldI18NImpl fPaths = new FieldI18NImpl();
+
+    /**
+     * This object maps paths of documents being loaded to callbacks waiting
+     * for them
+     */
+    private Map<String, List<AsyncCallback<Void>>> fPending = new HashMap<String, List<AsyncCallback<Void>>>();
+
+    /**
+     * This constructor uses the base URL of the current application module
+     * 
+     * @param builder the builder where templates are registered
+     */
+    public TemplateManifest(TemplatePanelBuilder builder) {
+        this(builder, GWT.getModuleBaseURL());
+    }
+
+    /**
+     * @param builder the builder where templates are registered
+     * @param baseURL the base URL of the manifest and template documents
+     */
+    public TemplateManifest(TemplatePanelBuilder builder, String baseURL) {
+        fBuilder = builder;
+        fBaseURL = baseURL;
+    }
+
+    /**
+     * Returns the path of the document containing the specified template
+     * 
+     * @param templateName the name of the template
+     * @return the path of the document or <code>null</code> if the template is
+     *         not declared in the manifest
+     */
+    public String getPath(String templateName) {
+        return fPaths.getString(templateName);
+    }
+
+    /**
+     * Loads the manifest with the specified path, sets its content (see
+     * {@link #setManifest(String)}) and registers this object as the template
+     * resolver of the builder
+     * 
+     * @param path the path of the manifest relative to the base URL
+     * @param callback the callback notified when the manifest is loaded
+     */
+    public void load(
+        String path,
+        final AsyncCallback<TemplatePanelBuilder> callback) {
+        new TextLoader(fBaseURL, path).load(new AsyncCallback<String>() {
+            public void onFailure(Throwable caught) {
+                callback.onFailure(caught);
+            }
+
+            public void onSuccess(String text) {
+                setManifest(text);
+                fBuilder.setTemplateResolver(TemplateManifest.this);
+                callback.onSuccess(fBuilder);
+            }
+        });
+    }
+
+    /**
+     * @see org.github.gwttemplate.templates.TemplateResolver#loadTemplate(java.lang.String,
+     *      com.google.gwt.user.client.rpc.AsyncCallback)
+     */
+    public void loadTemplate(String templateName, AsyncCallback<Void> callback) {
+        final String path = getPath(templateName);
+        if (path == null) {
+            callback.onFailure(new IllegalArgumentException("Template '"
+                + templateName
+                + "' is not declared in the manifest"));
+            return;
+        }
+        List<AsyncCallback<Void>> callbacks = fPending.get(path);
+        if (callbacks != null) {
+            callbacks.add(callback);
+            return;
+        }
+        callbacks = new ArrayList<AsyncCallback<Void>>();
+        callbacks.add(callback);
+        fPending.put(path, callbacks);
+        new TemplateDocumentLoader(fBuilder, fBaseURL, path)
+            .load(new AsyncCallback<List<String>>() {
+                public void onFailure(Throwable caught) {
+                    notifyCallbacks(fPending.remove(path), caught);
+                }
+
+                public void onSuccess(List<String> names) {
+                    notifyCallbacks(fPending.remove(path), null);
+                }
+            });
+    }
+
+    /**
+     * Notifies all given callbacks about the result of a template load. All
+     * callbacks are notified even if some of them throw an exception; the
+     * first thrown exception is rethrown when all callbacks are notified.
+     * 
+     * @param callbacks the callbacks to notify; it can be <code>null</code>
+     * @param caught the error of the load or <code>null</code> if the load
+     *        succeeded
+     */
+    private static void notifyCallbacks(
+        List<AsyncCallback<Void>> callbacks,
+        Throwable caught) {
+        if (callbacks == null)
+            return;
+        RuntimeException error = null;
+        for (AsyncCallback<Void> c : callbacks) {
+            try {
+                if (caught != null) {
+                    c.onFailure(caught);
+                } else {
+                    c.onSuccess(null);
+                }
+            } catch (RuntimeException e) {
+                if (error == null) {
+                    error = e;
+                }
+            }
+        }
+        if (error != null)
+            throw error;
+    }
+
+    /**
+     * Sets the path of the document containing the specified template
+     * 
+     * @param templateName the name of the template
+     * @param path the path of the document relative to the base URL
+     */
+    public void setPath(String templateName, String path) {
+        fPaths.setValue(templateName, path);
+    }
+
+    /**
+     * Sets the content of the manifest; all previously declared paths are
+     * removed
+     * 
+     * @param text the content of the manifest ("name=path" lines)
+     */
+    public void setManifest(String text) {
+        fPaths.setValues(text);
+    }
+
+}
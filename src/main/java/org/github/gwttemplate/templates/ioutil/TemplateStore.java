@@ -0,0 +1,138 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.templates.ioutil;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gwt.storage.client.Storage;
+
+/**
+ * This is a persistent client-side store of loaded resources (compiled
+ * template bundles, internationalization files...) based on the browser local
+ * storage. Each resource is stored under its path together with the content
+ * hash (or version) of the resource. A stored resource is returned only if its
+ * hash is the same as the expected one, so stale entries are never used; they
+ * are replaced when a new version of the resource is stored. If the local
+ * storage is not supported by the browser then this store is always empty.
+ * 
+ * 
+ */
+public class TemplateStore {
+
+    /**
+     * The prefix of all keys used by this store in the local storage
+     */
+    public static final String PREFIX = "gwttemplates:";
+
+    /**
+     * The browser storage; it is <code>null</code> if the local storage is
+     * not supported
+     */
+    private Storage fStorage;
+
+    /**
+     * This constructor uses the local storage of the browser
+     */
+    public TemplateStore() {
+        this(Storage.getLocalStorageIfSupported());
+    }
+
+    /**
+     * This constructor initializes the browser storage used by this object
+     * 
+     * @param storage the browser storage; it can be <code>null</code>
+     */
+    public TemplateStore(Storage storage) {
+        fStorage = storage;
+    }
+
+    /**
+     * Removes all resources from this store
+     */
+    public void clear() {
+        if (fStorage == null)
+            return;
+        List<String> keys = new ArrayList<String>();
+        for (int i = 0; i < fStorage.getLength(); i++) {
+            String key = fStorage.key(i);
+            if (key != null && key.startsWith(PREFIX)) {
+                keys.add(key);
+            }
+        }
+        for (String key : keys) {
+            fStorage.removeItem(key);
+        }
+    }
+
+    /**
+     * Returns the stored resource with the specified path if its hash is the
+     * same as the given one; otherwise this method returns <code>null</code>.
+     * 
+     * @param path the path of the resource
+     * @param hash the expected content hash or version of the resource
+     * @return the stored resource or <code>null</code>
+     */
+    public String get(String path, String hash) {
+        if (fStorage == null || hash == null)
+            return null;
+        String value = fStorage.getItem(PREFIX + path);
+        if (value == null)
+            return null;
+        int idx = value.indexOf('\n');
+        if (idx < 0 || !hash.equals(value.substring(0, idx)))
+            return null;
+        return value.substring(idx + 1);
+    }
+
+    /**
+     * Returns <code>true</code> if the browser supports the storage used by
+     * this object
+     * 
+     * @return <code>true</code> if resources can be stored
+     */
+    public boolean isSupported() {
+        return fStorage != null;
+    }
+
+    /**
+     * Stores the given resource with the specified hash. The previous version
+     * of the resource is replaced. If the resource can not be stored (for
+     * example if the storage quota is exceeded) then the previous version is
+     * just removed.
+     * 
+     * @param path the path of the resource
+     * @param hash the content hash or version of the resource
+     * @param value the resource to store
+     */
+    public void put(String path, String hash, String value) {
+        if (fStorage == null || hash == null || hash.indexOf('\n') >= 0)
+            return;
+        String key = PREFIX + path;
+        try {
+            fStorage.setItem(key, hash + "\n" + value);
+        } catch (RuntimeException e) {
+            fStorage.removeItem(key);
+        }
+    }
+
+    /**
+     * Removes the resource with the specified path from this store
+     * 
+     * @param path the path of the resource
+     */
+    public void remove(String path) {
+        if (fStorage != null) {
+            fStorage.removeItem(PREFIX + path);
+        }
+    }
+
+}
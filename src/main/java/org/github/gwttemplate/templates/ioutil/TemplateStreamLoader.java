@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.templates.ioutil;
+
+import java.util.List;
+
+import org.github.gwttemplate.templates.ProgressCallback;
+import org.github.gwttemplate.templates.TemplatePanelBuilder;
+
+import com.google.gwt.core.client.GWT;
+import com.google.gwt.http.client.RequestException;
+import com.google.gwt.xhr.client.ReadyStateChangeHandler;
+import com.google.gwt.xhr.client.XMLHttpRequest;
+
+/**
+ * This loader loads a template document progressively. The partial text of
+ * the response is given to a {@link TemplateStreamParser} each time new data
+ * arrives, so templates are registered in the builder as soon as they are
+ * received and the first panels can be built before the end of a large
+ * document is downloaded. The callback is notified each time new templates
+ * are registered; then the builder can be asked for them (see
+ * {@link TemplatePanelBuilder#getTemplateNames()}).
+ * <p>
+ * Browsers which do not expose partial responses deliver the whole text when
+ * the request is finished; in this case all templates are registered at
+ * once. Template bundles are always registered at the end of the request.
+ * </p>
+ * 
+ * 
+ */
+public class TemplateStreamLoader {
+
+    /**
+     * The builder where templates are registered
+     */
+    private TemplatePanelBuilder fBuilder;
+
+    /**
+     * The full URL of the template document
+     */
+    private String fUrl;
+
+    /**
+     * This constructor builds the full URL relative to the base URL of the
+     * current application module.
+     * 
+     * @param builder the builder where templates are registered
+     * @param path the local path of the template document
+     */
+    public TemplateStreamLoader(TemplatePanelBuilder builder, String path) {
+        this(builder, GWT.getModuleBaseURL(), path);
+    }
+
+    /**
+     * @param builder the builder where templates are registered
+     * @param baseURL the base URL used to build the full URL
+     * @param path the local path relative to the base URL
+     */
+    public TemplateStreamLoader(
+        TemplatePanelBuilder builder,
+        String baseURL,
+        String path) {
+        fBuilder = builder;
+        fUrl = baseURL + path;
+    }
+
+    /**
+     * Loads the template document. The
+     * {@link ProgressCallback#onProgress(int, int)} method of the given
+     * callback is called each time new templates are registered with the
+     * number of registered templates; the total number of templates is not
+     * known until the end of the document, so it is -1. When the document is
+     * complete the callback receives names of all registered templates.
+     * 
+     * @param callback the callback notified about registered templates
+     */
+    public void load(final ProgressCallback<List<String>> callback) {
+        final TemplateStreamParser parser = new TemplateStreamParser(fBuilder);
+        final XMLHttpRequest xhr = XMLHttpRequest.create();
+        xhr.open("GET", fUrl);
+        xhr.setOnReadyStateChange(new ReadyStateChangeHandler() {
+
+            private boolean fFailed;
+
+            private int fReceived;
+
+            public void onReadyStateChange(XMLHttpRequest request) {
+                int state = request.getReadyState();
+                if (state == XMLHttpRequest.DONE) {
+                    request.clearOnReadyStateChange();
+                }
+                boolean loading = state == XMLHttpRequest.LOADING
+                    || state == XMLHttpRequest.DONE;
+                if (fFailed || !loading)
+                    return;
+                try {
+                    int status = request.getStatus();
+                    if (status != 200) {
+                        if (state == XMLHttpRequest.DONE) {
+                            fFailed = true;
+                            callback.onFailure(new RequestException(
+                                "Template document '"
+                                    + fUrl
+                                    + "' was not loaded: "
+                                    + status));
+                        }
+                        return;
+                    }
+                    String text = request.getResponseText();
+                    if (text != null && text.length() > fReceived) {
+                        String chunk = text.substring(fReceived);
+                        fReceived = text.length();
+                        if (!parser.append(chunk).isEmpty()) {
+                            callback.onProgress(parser
+                                .getTemplateNames()
+                                .size(), -1);
+                        }
+                    }
+                    if (state == XMLHttpRequest.DONE) {
+                        parser.finish();
+                        callback.onSuccess(parser.getTemplateNames());
+                    }
+                } catch (RuntimeException e) {
+                    fFailed = true;
+                    if (state != XMLHttpRequest.DONE) {
+                        request.clearOnReadyStateChange();
+                        request.abort();
+                    }
+                    callback.onFailure(e);
+                }
+            }
+        });
+        xhr.send();
+    }
+
+}
@@ -0,0 +1,306 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.templates.ioutil;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.github.gwttemplate.templates.TemplatePanelBuilder;
+
+/**
+ * This parser registers templates of a template document while the text of
+ * the document is still arriving. The text is given by chunks of any size
+ * (see {@link #append(String)}). The parser scans the received text for
+ * boundaries of the top-level children of the root element; as soon as a
+ * child element is complete it is wrapped in a copy of the root start tag (so
+ * it keeps all namespace declarations) and registered in the builder with
+ * the {@link TemplatePanelBuilder#compileTemplates(String)} method. Processed
+ * text is dropped, so the parser never keeps more than one incomplete
+ * template.
+ * <p>
+ * Template bundles (see
+ * {@link org.github.gwttemplate.templates.TemplateBundle}) can not be split;
+ * they are accumulated and registered by the {@link #finish()} method.
+ * Entities declared in an internal DTD subset are not supported.
+ * </p>
+ * 
+ * 
+ */
+public class TemplateStreamParser {
+
+    /**
+     * The builder where templates are registered
+     */
+    private TemplatePanelBuilder fBuilder;
+
+    /**
+     * If this flag is <code>true</code> then the text is not an XML document
+     * (but a template bundle); it is registered only when it is complete
+     */
+    private boolean fBundle;
+
+    /**
+     * The nesting level of the current position: 0 - before the root
+     * element, 1 - between children of the root element
+     */
+    private int fDepth;
+
+    /**
+     * This flag is <code>true</code> when the root element is closed
+     */
+    private boolean fFinished;
+
+    /**
+     * Names of all registered templates
+     */
+    private List<String> fNames = new ArrayList<String>();
+
+    /**
+     * The position of the next token to scan in the text
+     */
+    private int fPos;
+
+    /**
+     * The qualified name of the root element
+     */
+    private String fRootName;
+
+    /**
+     * The start tag of the root element
+     */
+    private String fRootStart;
+
+    /**
+     * The position of the start tag of the current top-level child; it is -1
+     * if there is no child in progress
+     */
+    private int fStart = -1;
+
+    /**
+     * The received and not yet processed text
+     */
+    private String fText = "";
+
+    /**
+     * @param builder the builder where templates are registered
+     */
+    public TemplateStreamParser(TemplatePanelBuilder builder) {
+        fBuilder = builder;
+    }
+
+    /**
+     * Appends the next chunk of the document and registers all templates
+     * completed by this chunk
+     * 
+     * @param chunk the next chunk of the document
+     * @return names of templates registered by this call
+     * @throws RuntimeException if a completed template can not be parsed
+     */
+    public List<String> append(String chunk) {
+        fText += chunk;
+        if (fBundle || fFinished)
+            return Collections.emptyList();
+        if (fDepth == 0 && fRootStart == null) {
+            String text = fText.trim();
+            if (text.length() > 0 && text.charAt(0) != '<') {
+                fBundle = true;
+                return Collections.emptyList();
+            }
+        }
+        List<String> result = new ArrayList<String>();
+        boolean next = true;
+        while (!fFinished && next) {
+            next = scan(result);
+        }
+        return result;
+    }
+
+    /**
+     * Finishes the parsing. This method should be called when the whole
+     * document is received.
+     * 
+     * @return names of templates registered by this call (templates of a
+     *         bundle)
+     * @throws IllegalArgumentException if the document is not complete
+     */
+    public List<String> finish() throws IllegalArgumentException {
+        if (fBundle) {
+            List<String> result = fBuilder.compileTemplates(fText);
+            fNames.addAll(result);
+            fText = "";
+            fFinished = true;
+            return result;
+        }
+        if (!fFinished)
+            throw new IllegalArgumentException("Incomplete template document");
+        return Collections.emptyList();
+    }
+
+    /**
+     * Returns the position of the end of the tag starting at the specified
+     * position; quoted attribute values are skipped
+     * 
+     * @param pos the position of the tag
+     * @return the position of the closing '&gt;' character or -1 if the tag is
+     *         not complete yet
+     */
+    private int getTagEnd(int pos) {
+        char quote = 0;
+        for (int i = pos + 1; i < fText.length(); i++) {
+            char ch = fText.charAt(i);
+            if (quote != 0) {
+                if (ch == quote) {
+                    quote = 0;
+                }
+            } else if (ch == '"' || ch == '\'') {
+                quote = ch;
+            } else if (ch == '>')
+                return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns names of all templates registered by this parser
+     * 
+     * @return names of all registered templates in the document order
+     */
+    public List<String> getTemplateNames() {
+        return fNames;
+    }
+
+    /**
+     * Returns <code>true</code> if the root element of the document is
+     * closed
+     * 
+     * @return <code>true</code> if the whole document is processed
+     */
+    public boolean isFinished() {
+        return fFinished;
+    }
+
+    /**
+     * Checks if the text at the specified position starts with the given
+     * prefix
+     * 
+     * @param prefix the prefix to check
+     * @param pos the position in the text
+     * @return 1 if the text starts with the prefix, 0 if more text is required
+     *         to decide and -1 otherwise
+     */
+    private int match(String prefix, int pos) {
+        int len = Math.min(prefix.length(), fText.length() - pos);
+        if (!fText.regionMatches(pos, prefix, 0, len))
+            return -1;
+        return len == prefix.length() ? 1 : 0;
+    }
+
+    /**
+     * Registers the completed top-level child ending at the specified
+     * position and drops the processed text
+     * 
+     * @param end the position after the end of the child
+     * @param result the list where names of registered templates are added
+     */
+    private void onChild(int end, List<String> result) {
+        String text = fRootStart
+            + fText.substring(fStart, end)
+            + "</"
+            + fRootName
+            + ">";
+        List<String> names = fBuilder.compileTemplates(text);
+        result.addAll(names);
+        fNames.addAll(names);
+        fText = fText.substring(end);
+        fPos = 0;
+        fStart = -1;
+    }
+
+    /**
+     * Scans the next token of the text
+     * 
+     * @param result the list where names of registered templates are added
+     * @return <code>true</code> if a token was scanned; <code>false</code> if
+     *         more text is required
+     */
+    private boolean scan(List<String> result) {
+        int pos = fText.indexOf('<', fPos);
+        if (pos < 0) {
+            fPos = fText.length();
+            return false;
+        }
+        fPos = pos;
+        if (fText.length() - pos < 2)
+            return false;
+        char ch = fText.charAt(pos + 1);
+        String end = null;
+        if (ch == '?') {
+            end = "?>";
+        } else if (ch == '!') {
+            int comment = match("<!--", pos);
+            int cdata = match("<![CDATA[", pos);
+            if (comment == 0 || cdata == 0)
+                return false;
+            end = comment > 0 ? "-->" : cdata > 0 ? "]]>" : ">";
+        }
+        if (end != null) {
+            int idx = fText.indexOf(end, pos + 2);
+            if (idx < 0)
+                return false;
+            fPos = idx + end.length();
+            return true;
+        }
+        int idx = getTagEnd(pos);
+        if (idx < 0)
+            return false;
+        fPos = idx + 1;
+        if (ch == '/') {
+            fDepth--;
+            if (fDepth == 0) {
+                fFinished = true;
+            } else if (fDepth == 1 && fStart >= 0) {
+                onChild(fPos, result);
+            }
+            return true;
+        }
+        boolean empty = fText.charAt(idx - 1) == '/';
+        if (fDepth == 0) {
+            fRootStart = fText.substring(pos, empty ? idx - 1 : idx) + ">";
+            int i = pos + 1;
+            while (i < idx
+                && " \t\r\n/>".indexOf(fText.charAt(i)) < 0) {
+                i++;
+            }
+            fRootName = fText.substring(pos + 1, i);
+            fText = fText.substring(fPos);
+            fPos = 0;
+            if (empty) {
+                fFinished = true;
+            } else {
+                fDepth = 1;
+            }
+            return true;
+        }
+        if (fDepth == 1) {
+            fStart = pos;
+            if (empty) {
+                onChild(fPos, result);
+                return true;
+            }
+        }
+        if (!empty) {
+            fDepth++;
+        }
+        return true;
+    }
+
+}
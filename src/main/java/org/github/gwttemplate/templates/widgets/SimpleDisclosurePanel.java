@@ -18,6 +18,7 @@ package org.github.gwttemplate.templates.widgets;
 import java.util.ArrayList;
 
 import com.google.gwt.animation.client.Animation;
+import com.google.gwt.user.client.Command;
 import com.google.gwt.user.client.DOM;
 import com.google.gwt.user.client.ui.ClickListener;
 import com.google.gwt.user.client.ui.Composite;
@@ -223,6 +224,13 @@ public final class SimpleDisclosurePanel extends Composite
      */
     private final SimplePanel contentWrapper = new SimplePanel();
 
+    /**
+     * The command creating the content of this panel; it is executed once just
+     * before the panel is opened for the first time. It is <code>null</code>
+     * if the content was already loaded.
+     */
+    private Command fContentLoader;
+
     /**
      * The header of the panel.
      */
@@ -448,6 +456,17 @@ public final class SimpleDisclosurePanel extends Composite
         handlers.remove(handler);
     }
 
+    /**
+     * Executes the content loader (if any) and removes it
+     */
+    private void loadContent() {
+        Command loader = fContentLoader;
+        if (loader != null) {
+            fContentLoader = null;
+            loader.execute();
+        }
+    }
+
     public void setAnimationEnabled(boolean enable) {
         isAnimationEnabled = enable;
     }
@@ -476,6 +495,21 @@ public final class SimpleDisclosurePanel extends Composite
         }
     }
 
+    /**
+     * Sets the command used to create the content of this panel. This command
+     * is executed only once, just before the panel is opened for the first
+     * time. If the panel is already open then the command is executed
+     * immediately.
+     * 
+     * @param loader the command creating the content of this panel
+     */
+    public void setContentLoader(Command loader) {
+        fContentLoader = loader;
+        if (isOpen) {
+            loadContent();
+        }
+    }
+
     private void setContentDisplay(boolean animate) {
         if (isOpen) {
             removeStyleDependentName(STYLENAME_SUFFIX_CLOSED);
@@ -536,6 +570,9 @@ public final class SimpleDisclosurePanel extends Composite
     public void setOpen(boolean isOpen) {
         if (this.isOpen != isOpen) {
             this.isOpen = isOpen;
+            if (isOpen) {
+                loadContent();
+            }
             setContentDisplay(true);
             fireEvent();
         }
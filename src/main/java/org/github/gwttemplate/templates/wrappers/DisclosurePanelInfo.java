@@ -10,6 +10,7 @@
  *******************************************************************************/
 package org.github.gwttemplate.templates.wrappers;
 
+import org.github.gwttemplate.templates.DeferredTemplatePanelContainer;
 import org.github.gwttemplate.templates.FieldInfo;
 import org.github.gwttemplate.templates.TemplatePanelContainer;
 import org.github.gwttemplate.templates.TemplatePanel;
@@ -19,6 +20,7 @@ import org.github.gwttemplate.templates.widgets.SimpleDisclosurePanel;
 
 import java.util.Map;
 
+import com.google.gwt.user.client.Command;
 import com.google.gwt.user.client.ui.DisclosurePanel;
 import com.google.gwt.user.client.ui.Label;
 import com.google.gwt.user.client.ui.Widget;
@@ -26,12 +28,12 @@ import com.google.gwt.user.client.ui.Widget;
 /**
  * This is a wrapper for the {@link DisclosurePanel} widgets which are used to create a disclosure panel with a
  * clickable header and openable/closable panels. This panel shows/hides the HTML defined by the template with all
- * containing child fields.
+ * containing child fields. The content of a closed panel is created only when the panel is opened for the first time.
  * 
  * @see DisclosurePanel
  * 
  */
-public class DisclosurePanelInfo extends FieldInfo<SimpleDisclosurePanel> implements TemplatePanelContainer {
+public class DisclosurePanelInfo extends FieldInfo<SimpleDisclosurePanel> implements DeferredTemplatePanelContainer {
 
 	/**
 	 * The URI of the field used as a header of the disclosure panel.
@@ -85,6 +87,14 @@ public class DisclosurePanelInfo extends FieldInfo<SimpleDisclosurePanel> implem
 		}
 	}
 
+	/**
+	 * @see org.github.gwttemplate.templates.DeferredTemplatePanelContainer#isTemplatePanelDeferred()
+	 */
+	public boolean isTemplatePanelDeferred() {
+		SimpleDisclosurePanel panel = getWidget();
+		return !panel.isOpen();
+	}
+
 	/**
 	 * @see gwt.templates.FieldInfo#newWidget()
 	 */
@@ -105,6 +115,14 @@ public class DisclosurePanelInfo extends FieldInfo<SimpleDisclosurePanel> implem
 		panel.setContent(templatePanel);
 	}
 
+	/**
+	 * @see org.github.gwttemplate.templates.DeferredTemplatePanelContainer#setTemplatePanelLoader(com.google.gwt.user.client.Command)
+	 */
+	public void setTemplatePanelLoader(Command loader) {
+		SimpleDisclosurePanel panel = getWidget();
+		panel.setContentLoader(loader);
+	}
+
 	/**
 	 * @see gwt.templates.FieldInfo#setValue(java.lang.Object)
 	 */
@@ -10,6 +10,7 @@
  *******************************************************************************/
 package org.github.gwttemplate.templates.wrappers;
 
+import org.github.gwttemplate.templates.DeferredTemplatePanelContainer;
 import org.github.gwttemplate.templates.FieldInfo;
 import org.github.gwttemplate.templates.TemplatePanelContainer;
 import org.github.gwttemplate.templates.TemplatePanel;
@@ -17,16 +18,32 @@ import org.github.gwttemplate.templates.TemplateTopPanel;
 
 import java.util.Map;
 
+import com.google.gwt.user.client.Command;
 import com.google.gwt.user.client.ui.FlowPanel;
 
 /**
- * The simple panel used as a container for the underlying HTML.
+ * The simple panel used as a container for the underlying HTML. The creation of
+ * the content can be postponed by the parent field (for example by a
+ * {@link TabPanelInfo} for hidden tabs).
  * 
  * 
  */
 public class SimplePanelInfo extends FieldInfo<FlowPanel>
     implements
-    TemplatePanelContainer {
+    DeferredTemplatePanelContainer {
+
+    /**
+     * This flag is <code>true</code> if the content of this panel should be
+     * created only when the {@link #loadTemplatePanel()} method is called
+     */
+    private boolean fTemplatePanelDeferred;
+
+    /**
+     * The command creating the content of this panel; it is
+     * <code>null</code> if the content is not deferred or if it was already
+     * loaded.
+     */
+    private Command fTemplatePanelLoader;
 
     /**
      * This constructor initializes internal fields of this widget wrapper.
@@ -47,6 +64,25 @@ public class SimplePanelInfo extends FieldInfo<FlowPanel>
     public void clear() {
     }
 
+    /**
+     * @see org.github.gwttemplate.templates.DeferredTemplatePanelContainer#isTemplatePanelDeferred()
+     */
+    public boolean isTemplatePanelDeferred() {
+        return fTemplatePanelDeferred;
+    }
+
+    /**
+     * Creates the deferred content of this panel if it was not created yet
+     */
+    public void loadTemplatePanel() {
+        fTemplatePanelDeferred = false;
+        Command loader = fTemplatePanelLoader;
+        if (loader != null) {
+            fTemplatePanelLoader = null;
+            loader.execute();
+        }
+    }
+
     /**
      * @see gwt.templates.FieldInfo#newWidget()
      */
@@ -63,4 +99,25 @@ public class SimplePanelInfo extends FieldInfo<FlowPanel>
         panel.add(templatePanel);
     }
 
+    /**
+     * Defines if the content of this panel should be created only when the
+     * {@link #loadTemplatePanel()} method is called. This method should be
+     * called before the content of this panel is built.
+     * 
+     * @param deferred the flag to set
+     */
+    public void setTemplatePanelDeferred(boolean deferred) {
+        fTemplatePanelDeferred = deferred;
+    }
+
+    /**
+     * @see org.github.gwttemplate.templates.DeferredTemplatePanelContainer#setTemplatePanelLoader(com.google.gwt.user.client.Command)
+     */
+    public void setTemplatePanelLoader(Command loader) {
+        fTemplatePanelLoader = loader;
+        if (!fTemplatePanelDeferred) {
+            loadTemplatePanel();
+        }
+    }
+
 }
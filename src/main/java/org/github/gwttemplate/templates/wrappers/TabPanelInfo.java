@@ -13,20 +13,31 @@ package org.github.gwttemplate.templates.wrappers;
 import org.github.gwttemplate.templates.FieldInfo;
 import org.github.gwttemplate.templates.TemplateTopPanel;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 
+import com.google.gwt.event.logical.shared.BeforeSelectionEvent;
+import com.google.gwt.event.logical.shared.BeforeSelectionHandler;
 import com.google.gwt.user.client.ui.TabPanel;
 import com.google.gwt.user.client.ui.Widget;
 
 /**
  * This field wrapper corresponds to a {@link TabPanel} widget. It expects the
  * {@link SimplePanelInfo} fields as their children. Such children define
- * individual tabs in this tab panel.
+ * individual tabs in this tab panel. The content of tabs which are not selected
+ * is created only when the tab is selected for the first time.
  * 
  * 
  */
 public class TabPanelInfo extends FieldInfo<TabPanel> {
 
+    /**
+     * Fields corresponding to individual tabs; each field has the same index
+     * as the corresponding tab.
+     */
+    private List<SimplePanelInfo> fTabs = new ArrayList<SimplePanelInfo>();
+
     /**
      * This constructor initializes internal fields of this widget wrapper.
      * 
@@ -48,11 +59,14 @@ public class TabPanelInfo extends FieldInfo<TabPanel> {
             String label = i.getLabelFromAttributes();
             Widget w = i.getWidget();
             panel.add(w, label);
+            fTabs.add(i);
             boolean selected = i.getAttributeAsBoolean(NS_TEMPLATES
                 + "selected", false);
             if (selected) {
                 int count = panel.getTabBar().getTabCount();
                 panel.selectTab(count - 1);
+            } else {
+                i.setTemplatePanelDeferred(true);
             }
             add = false;
         }
@@ -64,6 +78,15 @@ public class TabPanelInfo extends FieldInfo<TabPanel> {
      */
     protected TabPanel newWidget() {
         TabPanel panel = new TabPanel();
+        panel.addBeforeSelectionHandler(new BeforeSelectionHandler<Integer>() {
+            public void onBeforeSelection(BeforeSelectionEvent<Integer> event) {
+                int tabIndex = event.getItem();
+                if (tabIndex >= 0 && tabIndex < fTabs.size()) {
+                    SimplePanelInfo tab = fTabs.get(tabIndex);
+                    tab.loadTemplatePanel();
+                }
+            }
+        });
         return panel;
     }
 
@@ -0,0 +1,37 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.commons.io;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+
+import com.google.gwt.junit.tools.GWTTestSuite;
+
+/**
+ * This suite runs all browser tests of the commons module. Tests using the
+ * same GWT module are run together so the module is compiled only once.
+ * 
+ * 
+ */
+public class CommonsGwtTestSuite extends TestCase {
+
+    /**
+     * Returns the suite of all browser tests
+     * 
+     * @return the suite of all browser tests
+     */
+    public static Test suite() {
+        GWTTestSuite suite = new GWTTestSuite("Browser tests of commons");
+        suite.addTestSuite(ResourceLoaderBarrierGwtTest.class);
+        return suite;
+    }
+
+}
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.commons.io;
+
+import java.util.List;
+
+import com.google.gwt.core.client.GWT;
+import com.google.gwt.http.client.RequestBuilder;
+import com.google.gwt.junit.client.GWTTestCase;
+import com.google.gwt.user.client.Timer;
+import com.google.gwt.user.client.rpc.AsyncCallback;
+
+/**
+ * Tests {@link ResourceLoaderBarrier} with real loaders; all loaders load the
+ * bootstrap script of the test module.
+ * 
+ * 
+ */
+public class ResourceLoaderBarrierGwtTest extends GWTTestCase {
+
+    /**
+     * The number of loaders in the barrier
+     */
+    private static final int LOADER_COUNT = 4;
+
+    /**
+     * The number of running loaders
+     */
+    private int fActive;
+
+    /**
+     * The number of calls of the
+     * {@link ResourceLoaderBarrier#onFinish(List, List)} method
+     */
+    private int fFinishCount;
+
+    /**
+     * The maximal number of simultaneously running loaders
+     */
+    private int fMaxActive;
+
+    /**
+     * The number of notified callbacks
+     */
+    private int fNotified;
+
+    /**
+     * @see com.google.gwt.junit.client.GWTTestCase#getModuleName()
+     */
+    @Override
+    public String getModuleName() {
+        return "org.github.gwttemplate.GWTCommonsTest";
+    }
+
+    /**
+     * Returns a new callback of a loader
+     * 
+     * @param fail if this flag is <code>true</code> then the callback throws
+     *        an exception when it is notified about the result
+     * @return a new callback
+     */
+    private AsyncCallback<String> newCallback(final boolean fail) {
+        return new AsyncCallback<String>() {
+            public void onFailure(Throwable caught) {
+                fActive--;
+                fNotified++;
+            }
+
+            public void onSuccess(String result) {
+                fActive--;
+                fNotified++;
+                if (fail)
+                    throw new IllegalStateException("callback error");
+            }
+        };
+    }
+
+    /**
+     * Returns a new loader of the bootstrap script of the test module; the
+     * loader counts running loads
+     * 
+     * @return a new loader
+     */
+    private TextLoader newLoader() {
+        return new TextLoader(GWT.getModuleName() + ".nocache.js") {
+            @Override
+            protected RequestBuilder newRequest() {
+                fActive++;
+                fMaxActive = Math.max(fMaxActive, fActive);
+                return super.newRequest();
+            }
+        };
+    }
+
+    public void testThrowingCallback() {
+        ResourceLoaderBarrier barrier = new ResourceLoaderBarrier() {
+            @Override
+            protected void onFinish(
+                List<Object> successList,
+                List<Throwable> failureList) {
+                fFinishCount++;
+                assertEquals(LOADER_COUNT, fNotified);
+                assertEquals(LOADER_COUNT, successList.size());
+                assertEquals(0, failureList.size());
+                // Checks that the barrier does not finish again
+                new Timer() {
+                    @Override
+                    public void run() {
+                        assertEquals(1, fFinishCount);
+                        assertEquals(1, fMaxActive);
+                        finishTest();
+                    }
+                }.schedule(500);
+            }
+        };
+        barrier.setMaxConcurrency(1);
+        for (int i = 0; i < LOADER_COUNT; i++) {
+            barrier.add(newLoader(), newCallback(i == 0));
+        }
+        delayTestFinish(10000);
+        barrier.load();
+    }
+
+}
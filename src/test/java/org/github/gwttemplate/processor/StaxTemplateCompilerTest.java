@@ -0,0 +1,144 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.xml.parsers.DocumentBuilderFactory;
+
+import org.github.gwttemplate.templates.AttributeTable;
+import org.github.gwttemplate.templates.ElementCache;
+import org.github.gwttemplate.templates.FieldInfoFactoryRegistry;
+import org.github.gwttemplate.templates.TemplateNamespaces;
+import org.github.gwttemplate.templates.cache.CacheNode;
+import org.junit.Test;
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+
+/**
+ * Compares cache structures built by {@link StaxTemplateCompiler} with the
+ * ones built by {@link DomTemplateCompiler}, which mirrors the cache builder
+ * used in the browser.
+ * 
+ * 
+ */
+public class StaxTemplateCompilerTest implements TemplateNamespaces {
+
+    /**
+     * The test document. Xerces reports attributes in the alphabetical order
+     * while browsers and StAX readers keep the document order, so attributes
+     * of static elements are written in the alphabetical order.
+     */
+    private static final String DOCUMENT = "<?xml version='1.0'?>\n"
+        + "<!-- templates -->\n"
+        + "<x:templates xmlns:x='"
+        + NS_TEMPLATES
+        + "' xmlns='http://www.w3.org/1999/xhtml'"
+        + " xmlns:a='http://www.example.com/attributes'>\n"
+        + "<x:template x:name='form' x:title='Form &amp; more'>\n"
+        + "  <!-- header -->\n"
+        + "  <h1 a:role='heading' class='title'>Tom &amp; Jerry &lt;3</h1>\n"
+        + "  <p>Text <![CDATA[<b>not markup</b> & raw]]> tail</p>\n"
+        + "  <x:panel x:name='address' a:hint='a &quot;hint&quot;'>\n"
+        + "    <div class='row'>Street: <x:input x:name='street'"
+        + " x:value='&lt;none&gt;'/></div>\n"
+        + "    <x:inlinePanel x:name='inner'>\n"
+        + "      <span>City:</span><x:input x:name='city'/>\n"
+        + "      <!-- nested comment -->\n"
+        + "      <x:checkbox x:name='main' x:checked='yes'/>\n"
+        + "    </x:inlinePanel>\n"
+        + "  </x:panel>\n"
+        + "  <x:textarea x:name='notes'><![CDATA[a<b]]></x:textarea>\n"
+        + "</x:template>\n"
+        + "<x:template x:name='empty'/>\n"
+        + "</x:templates>";
+
+    private static List<TemplateDefinition> compileWithDom(String text)
+        throws Exception {
+        DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+        factory.setNamespaceAware(true);
+        Document doc = factory.newDocumentBuilder().parse(
+            new InputSource(new StringReader(text)));
+        return new DomTemplateCompiler(new FieldInfoFactoryRegistry())
+            .compileTemplates(doc);
+    }
+
+    private static List<TemplateDefinition> compileWithStax(String text)
+        throws Exception {
+        return new StaxTemplateCompiler(new FieldInfoFactoryRegistry())
+            .compileTemplates(new StringReader(text));
+    }
+
+    @Test
+    public void testSameStructures() throws Exception {
+        List<TemplateDefinition> expected = compileWithDom(DOCUMENT);
+        List<TemplateDefinition> templates = compileWithStax(DOCUMENT);
+        assertEquals(2, expected.size());
+        assertEquals(expected.size(), templates.size());
+        for (int i = 0; i < expected.size(); i++) {
+            TemplateDefinition e = expected.get(i);
+            TemplateDefinition t = templates.get(i);
+            assertEquals(e.getName(), t.getName());
+            assertEquals(e.getAttributes(), t.getAttributes());
+            assertEquals(
+                e.getTemplate().toString(),
+                t.getTemplate().toString());
+            assertEquals(e.getTemplate(), t.getTemplate());
+            assertEquals(e.getTemplate().hashCode(), t
+                .getTemplate()
+                .hashCode());
+        }
+    }
+
+    @Test
+    public void testElementEquality() {
+        Map<String, String> map = new HashMap<String, String>();
+        map.put(TAG_URI, NS_TEMPLATES + "input");
+        map.put(X_ATTR_NAME, "a");
+        ElementCache a = new ElementCache(
+            null,
+            NS_TEMPLATES + "input",
+            new AttributeTable(map));
+        map.put(X_ATTR_NAME, "b");
+        ElementCache b = new ElementCache(
+            null,
+            NS_TEMPLATES + "input",
+            new AttributeTable(map));
+        assertFalse(a.equals(b));
+
+        map.put(X_ATTR_NAME, "a");
+        map.put(TAG_URI, NS_TEMPLATES + "password");
+        ElementCache c = new ElementCache(
+            null,
+            NS_TEMPLATES + "password",
+            new AttributeTable(map));
+        assertFalse(a.equals(c));
+
+        map.put(TAG_URI, NS_TEMPLATES + "input");
+        ElementCache d = new ElementCache(
+            null,
+            NS_TEMPLATES + "input",
+            new AttributeTable(map),
+            new CacheNode[] { a });
+        assertFalse(a.equals(d));
+        assertEquals(a, new ElementCache(
+            null,
+            NS_TEMPLATES + "input",
+            new AttributeTable(map)));
+    }
+
+}
@@ -0,0 +1,180 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.processor;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.PrintWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.tools.JavaCompiler;
+import javax.tools.ToolProvider;
+
+import org.github.gwttemplate.templates.FieldInfoFactory;
+import org.github.gwttemplate.templates.FieldInfoFactoryRegistry;
+import org.github.gwttemplate.templates.TemplatePanelBuilder;
+import org.github.gwttemplate.templates.TemplateProvider;
+import org.github.gwttemplate.templates.TemplateNamespaces;
+import org.junit.Test;
+
+/**
+ * Tests the sources generated by {@link TemplateSourceWriter}.
+ * 
+ * 
+ */
+public class TemplateSourceWriterTest implements TemplateNamespaces {
+
+    /**
+     * Deletes the given file or directory with all its content
+     * 
+     * @param file the file to delete
+     */
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Returns the class path used to compile generated sources
+     * 
+     * @return the class path of tests
+     */
+    private static String getClassPath() {
+        String path = System.getProperty("surefire.test.class.path");
+        return path != null ? path : System.getProperty("java.class.path");
+    }
+
+    /**
+     * Returns a template document with one large template containing the
+     * specified number of nested panels; each panel contains the specified
+     * number of input fields.
+     * 
+     * @param depth the number of nested panels
+     * @param width the number of fields in each panel
+     * @return the text of the template document
+     */
+    private static String newDocument(int depth, int width) {
+        StringBuffer buf = new StringBuffer();
+        buf.append("<x:templates xmlns:x='").append(NS_TEMPLATES).append("'");
+        buf.append(" xmlns='http://www.w3.org/1999/xhtml'>");
+        buf.append("<x:template x:name='large'><div>");
+        for (int i = 0; i < depth; i++) {
+            buf.append("<x:panel x:name='panel").append(i).append("'>");
+            for (int j = 0; j < width; j++) {
+                buf.append("<p class='row'>Field ").append(j).append(": ");
+                buf.append("<x:input x:name='field").append(i).append('_');
+                buf.append(j).append("' x:value='value' /></p>");
+            }
+        }
+        for (int i = 0; i < depth; i++) {
+            buf.append("</x:panel>");
+        }
+        buf.append("</div></x:template></x:templates>");
+        return buf.toString();
+    }
+
+    @Test
+    public void testLargeTemplateCompiles() throws Exception {
+        StaxTemplateCompiler compiler = new StaxTemplateCompiler(
+            new FieldInfoFactoryRegistry());
+        List<TemplateDefinition> templates = compiler
+            .compileTemplates(new StringReader(newDocument(200, 40)));
+        assertEquals(1, templates.size());
+
+        File dir = File.createTempFile("templates", "");
+        dir.delete();
+        try {
+            compileAndLoad(dir, templates);
+        } finally {
+            delete(dir);
+        }
+    }
+
+    /**
+     * Writes and compiles the provider of the given templates in the
+     * specified directory and registers the templates
+     * 
+     * @param dir the output directory
+     * @param templates the templates to write
+     * @throws Exception
+     */
+    private void compileAndLoad(File dir, List<TemplateDefinition> templates)
+        throws Exception {
+        File pkg = new File(dir, "test");
+        assertTrue(pkg.mkdirs());
+        File source = new File(pkg, "Large_TemplateProvider.java");
+        PrintWriter out = new PrintWriter(new FileWriter(source));
+        try {
+            new TemplateSourceWriter(out).write(
+                "test",
+                "Large_TemplateProvider",
+                "a test document",
+                templates);
+        } finally {
+            out.close();
+        }
+
+        JavaCompiler javac = ToolProvider.getSystemJavaCompiler();
+        StringWriter errors = new StringWriter();
+        int result = javac.getTask(
+            errors,
+            null,
+            null,
+            Arrays.asList("-classpath", getClassPath(), "-d", dir.getPath()),
+            null,
+            javac.getStandardFileManager(null, null, null).getJavaFileObjects(
+                source)).call() ? 0 : 1;
+        assertEquals(errors.toString(), 0, result);
+        assertTrue(new File(pkg, "Large_TemplateProvider.class").exists());
+
+        ClassLoader loader = new URLClassLoader(
+            new URL[] { dir.toURI().toURL() },
+            getClass().getClassLoader());
+        TemplateProvider provider = (TemplateProvider) loader.loadClass(
+            "test.Large_TemplateProvider").newInstance();
+        TemplatePanelBuilder builder = new TemplatePanelBuilder(
+            new FieldInfoFactoryRegistry());
+        provider.addTemplates(builder);
+        assertEquals(templates.get(0).getTemplate(), builder
+            .getTemplate("large"));
+
+        builder = new TemplatePanelBuilder(new FieldInfoFactoryRegistry() {
+            @Override
+            public FieldInfoFactory getFieldInfoFactoryNS(
+                String ns,
+                String name) {
+                return "input".equals(name) ? null : super
+                    .getFieldInfoFactoryNS(ns, name);
+            }
+        });
+        try {
+            provider.addTemplates(builder);
+            fail("Unregistered widget tags should be rejected");
+        } catch (IllegalStateException e) {
+            assertTrue(e.getMessage().indexOf("#input") > 0);
+        }
+    }
+
+}
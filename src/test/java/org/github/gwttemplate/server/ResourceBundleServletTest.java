@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.server;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.Test;
+
+/**
+ * Tests the mapping of requested URLs to resource paths in
+ * {@link ResourceBundleServlet}.
+ * 
+ * 
+ */
+public class ResourceBundleServletTest {
+
+    /**
+     * Returns a request stub with the given context path
+     * 
+     * @param contextPath the context path of the request
+     * @return a new request stub
+     */
+    private static HttpServletRequest newRequest(final String contextPath) {
+        return (HttpServletRequest) Proxy.newProxyInstance(
+            ResourceBundleServletTest.class.getClassLoader(),
+            new Class<?>[] { HttpServletRequest.class },
+            new InvocationHandler() {
+                public Object invoke(Object proxy, Method method, Object[] args) {
+                    if ("getContextPath".equals(method.getName()))
+                        return contextPath;
+                    throw new UnsupportedOperationException(method.getName());
+                }
+            });
+    }
+
+    private ResourceBundleServlet fServlet = new ResourceBundleServlet();
+
+    private String getPath(String contextPath, String url) {
+        return fServlet.getResourcePath(newRequest(contextPath), url);
+    }
+
+    @Test
+    public void testAcceptedPaths() {
+        assertEquals("/app/templates.xml", getPath("", "/app/templates.xml"));
+        assertEquals("/app/templates.xml", getPath(
+            "",
+            "http://localhost:8080/app/templates.xml?v=1"));
+        assertEquals("/app/i18n.txt", getPath("/ctx", "/ctx/app/i18n.txt"));
+        assertEquals("/app/a..b.txt", getPath("", "/app/a..b.txt"));
+        assertEquals("/web-inf.txt", getPath("", "/web-inf.txt"));
+    }
+
+    @Test
+    public void testProtectedFolders() {
+        assertNull(getPath("", "/WEB-INF/web.xml"));
+        assertNull(getPath("", "/web-inf/web.xml"));
+        assertNull(getPath("", "/META-INF/MANIFEST.MF"));
+        assertNull(getPath("/ctx", "/ctx/WEB-INF/web.xml"));
+        assertNull(getPath("", "/WEB-INF"));
+    }
+
+    @Test
+    public void testBypassPaths() {
+        assertNull(getPath("", "/./WEB-INF/web.xml"));
+        assertNull(getPath("", "//WEB-INF/web.xml"));
+        assertNull(getPath("", "/app/../WEB-INF/web.xml"));
+        assertNull(getPath("", "/app/./../WEB-INF/web.xml"));
+        assertNull(getPath("", "/%57EB-INF/web.xml"));
+        assertNull(getPath("", "/WEB-INF;x/web.xml"));
+        assertNull(getPath("", "/\\WEB-INF/web.xml"));
+        assertNull(getPath("/ctx", "/ctx//WEB-INF/web.xml"));
+        assertNull(getPath("/ctx", "/ctx/./META-INF/context.xml"));
+        assertNull(getPath("", "http://localhost//WEB-INF/web.xml"));
+    }
+
+    @Test
+    public void testOutsideOfContext() {
+        assertNull(getPath("/ctx", "/other/app/templates.xml"));
+        assertNull(getPath("/ctx", "/ctxother/templates.xml"));
+        assertNull(getPath("", "app/templates.xml"));
+        assertNull(getPath("", "/"));
+        assertNull(getPath("", "http://localhost"));
+    }
+
+}
@@ -0,0 +1,132 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.templates;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+/**
+ * Tests {@link AttributeMap} against the {@link HashMap} semantics used
+ * before attribute tables were shared.
+ * 
+ * 
+ */
+public class AttributeMapTest {
+
+    private static AttributeMap newMap() {
+        Map<String, String> attributes = new LinkedHashMap<String, String>();
+        attributes.put("a", "1");
+        attributes.put("b", "2");
+        attributes.put("c", "3");
+        return new AttributeMap(new AttributeTable(attributes));
+    }
+
+    private static Map<String, String> newExpected() {
+        Map<String, String> expected = new HashMap<String, String>();
+        expected.put("a", "1");
+        expected.put("b", "2");
+        expected.put("c", "3");
+        return expected;
+    }
+
+    @Test
+    public void testPutAndRemove() {
+        AttributeMap map = newMap();
+        Map<String, String> expected = newExpected();
+        assertEquals(expected, map);
+        assertEquals("2", map.put("b", "20"));
+        assertNull(map.put("d", "4"));
+        assertEquals("1", map.remove("a"));
+        assertNull(map.remove("x"));
+        expected.put("b", "20");
+        expected.put("d", "4");
+        expected.remove("a");
+        assertEquals(expected, map);
+        assertEquals(expected, new HashMap<String, String>(map));
+        assertEquals(3, map.size());
+        assertFalse(map.containsKey("a"));
+        assertTrue(map.containsKey("d"));
+    }
+
+    @Test
+    public void testEntrySetValue() {
+        AttributeMap map = newMap();
+        map.put("d", "4");
+        for (Map.Entry<String, String> entry : map.entrySet()) {
+            entry.setValue(entry.getValue() + "0");
+        }
+        Map<String, String> expected = new HashMap<String, String>();
+        expected.put("a", "10");
+        expected.put("b", "20");
+        expected.put("c", "30");
+        expected.put("d", "40");
+        assertEquals(expected, map);
+        assertEquals("20", map.get("b"));
+        assertEquals(4, map.size());
+    }
+
+    @Test
+    public void testIteratorRemove() {
+        AttributeMap map = newMap();
+        map.put("d", "4");
+        Iterator<Map.Entry<String, String>> iterator = map
+            .entrySet()
+            .iterator();
+        while (iterator.hasNext()) {
+            String key = iterator.next().getKey();
+            if (!"c".equals(key)) {
+                iterator.remove();
+            }
+        }
+        assertEquals(1, map.size());
+        assertEquals("3", map.get("c"));
+        assertNull(map.get("d"));
+        assertEquals(1, map.entrySet().size());
+    }
+
+    @Test
+    public void testKeySetAndValues() {
+        AttributeMap map = newMap();
+        map.put("d", "4");
+        assertTrue(map.keySet().remove("a"));
+        assertTrue(map.keySet().remove("d"));
+        assertFalse(map.keySet().remove("x"));
+        assertTrue(map.values().remove("2"));
+        assertEquals(1, map.size());
+        assertEquals(1, map.keySet().size());
+        assertEquals("3", map.get("c"));
+        map.keySet().clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get("c"));
+    }
+
+    @Test
+    public void testClear() {
+        AttributeMap map = newMap();
+        map.put("d", "4");
+        map.clear();
+        assertEquals(0, map.size());
+        assertTrue(map.entrySet().isEmpty());
+        map.put("a", "5");
+        assertEquals(1, map.size());
+        assertEquals("5", map.get("a"));
+    }
+
+}
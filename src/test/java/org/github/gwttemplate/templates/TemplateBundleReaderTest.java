@@ -0,0 +1,95 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.templates;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+import org.github.gwttemplate.processor.StaxTemplateCompiler;
+import org.github.gwttemplate.processor.TemplateDefinition;
+import org.junit.Test;
+
+/**
+ * Tests reading of template bundles by {@link TemplateBundleReader}.
+ * 
+ * 
+ */
+public class TemplateBundleReaderTest implements TemplateNamespaces {
+
+    private static final String DOCUMENT = "<x:templates xmlns:x='"
+        + NS_TEMPLATES
+        + "' xmlns='http://www.w3.org/1999/xhtml'>"
+        + "<x:template x:name='a'><p>Name: <x:input x:name='name'/></p>"
+        + "</x:template>"
+        + "<x:template x:name='b'><p>Static</p></x:template>"
+        + "</x:templates>";
+
+    /**
+     * Returns a bundle containing the templates of the test document
+     * 
+     * @return a serialized template bundle
+     * @throws Exception
+     */
+    private static String newBundle() throws Exception {
+        StaxTemplateCompiler compiler = new StaxTemplateCompiler(
+            new FieldInfoFactoryRegistry());
+        List<TemplateDefinition> templates = compiler
+            .compileTemplates(new StringReader(DOCUMENT));
+        TemplateBundleWriter writer = new TemplateBundleWriter();
+        for (TemplateDefinition template : templates) {
+            writer.addTemplate(
+                template.getName(),
+                template.getTemplate(),
+                template.getAttributes());
+        }
+        return writer.toBundle();
+    }
+
+    @Test
+    public void testRead() throws Exception {
+        TemplatePanelBuilder builder = new TemplatePanelBuilder(
+            new FieldInfoFactoryRegistry());
+        List<String> names = new TemplateBundleReader(builder)
+            .read(newBundle());
+        assertEquals(Arrays.asList("a", "b"), names);
+        assertTrue(builder.hasTemplate("a"));
+        assertTrue(builder.hasTemplate("b"));
+    }
+
+    @Test
+    public void testUnregisteredTag() throws Exception {
+        TemplatePanelBuilder builder = new TemplatePanelBuilder(
+            new FieldInfoFactoryRegistry() {
+                @Override
+                public FieldInfoFactory getFieldInfoFactoryNS(
+                    String ns,
+                    String name) {
+                    return "input".equals(name) ? null : super
+                        .getFieldInfoFactoryNS(ns, name);
+                }
+            });
+        try {
+            new TemplateBundleReader(builder).read(newBundle());
+            fail("Bundles with unregistered widget tags should be rejected");
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().indexOf("#input") > 0);
+        }
+        assertFalse(builder.hasTemplate("a"));
+        assertFalse(builder.hasTemplate("b"));
+    }
+
+}
@@ -0,0 +1,123 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.templates;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.google.gwt.user.client.rpc.AsyncCallback;
+
+/**
+ * Tests loading of missing templates through a {@link TemplateResolver}.
+ * 
+ * 
+ */
+public class TemplatePanelBuilderTest {
+
+    /**
+     * A resolver keeping callbacks of requested loads
+     */
+    private static class TestResolver implements TemplateResolver {
+
+        List<AsyncCallback<Void>> fCallbacks = new ArrayList<AsyncCallback<Void>>();
+
+        public void loadTemplate(
+            String templateName,
+            AsyncCallback<Void> callback) {
+            fCallbacks.add(callback);
+        }
+    }
+
+    /**
+     * A callback counting notifications; it throws the given exception (if
+     * any) when it is notified
+     */
+    private static class TestCallback implements AsyncCallback<Void> {
+
+        RuntimeException fError;
+
+        int fFailures;
+
+        int fSuccesses;
+
+        TestCallback(RuntimeException error) {
+            fError = error;
+        }
+
+        public void onFailure(Throwable caught) {
+            fFailures++;
+            if (fError != null)
+                throw fError;
+        }
+
+        public void onSuccess(Void result) {
+            fSuccesses++;
+            if (fError != null)
+                throw fError;
+        }
+    }
+
+    @Test
+    public void testThrowingWaiter() {
+        TemplatePanelBuilder builder = new TemplatePanelBuilder(
+            new FieldInfoFactoryRegistry());
+        TestResolver resolver = new TestResolver();
+        builder.setTemplateResolver(resolver);
+        RuntimeException error = new RuntimeException("callback error");
+        TestCallback first = new TestCallback(error);
+        TestCallback second = new TestCallback(null);
+        builder.loadTemplates(Collections.singletonList("a"), first);
+        builder.loadTemplates(Collections.singletonList("a"), second);
+        assertEquals(1, resolver.fCallbacks.size());
+
+        AsyncCallback<Void> callback = resolver.fCallbacks.get(0);
+        try {
+            callback.onSuccess(null);
+            fail();
+        } catch (RuntimeException e) {
+            assertSame(error, e);
+        }
+        assertEquals(1, first.fSuccesses);
+        assertEquals(1, second.fSuccesses);
+
+        // Resource loaders report errors of callbacks to the same callback
+        callback.onFailure(error);
+        assertEquals(0, first.fFailures);
+        assertEquals(0, second.fFailures);
+    }
+
+    @Test
+    public void testFailedLoad() {
+        TemplatePanelBuilder builder = new TemplatePanelBuilder(
+            new FieldInfoFactoryRegistry());
+        TestResolver resolver = new TestResolver();
+        builder.setTemplateResolver(resolver);
+        TestCallback first = new TestCallback(new RuntimeException());
+        TestCallback second = new TestCallback(null);
+        builder.loadTemplates(Collections.singletonList("a"), first);
+        builder.loadTemplates(Collections.singletonList("a"), second);
+        try {
+            resolver.fCallbacks.get(0).onFailure(new Exception("load error"));
+            fail();
+        } catch (RuntimeException e) {
+        }
+        assertEquals(1, first.fFailures);
+        assertEquals(1, second.fFailures);
+    }
+
+}
@@ -0,0 +1,311 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.templates;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gwt.core.client.Duration;
+import com.google.gwt.dom.client.Document;
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.dom.client.NodeList;
+import com.google.gwt.junit.client.GWTTestCase;
+import com.google.gwt.user.client.ui.Widget;
+
+/**
+ * Tests binding of field widgets to slot elements of template scopes (see
+ * {@link TemplateScope}). Widgets should take the places of their slots in
+ * the static HTML like with the former identifier-based binding.
+ * 
+ * 
+ */
+public class TemplatePanelGwtTest extends GWTTestCase
+    implements
+    TemplateNamespaces {
+
+    /**
+     * The number of input fields in the test template
+     */
+    private static final int FIELD_COUNT = 50;
+
+    /**
+     * The number of repetitions of each measured operation in benchmarks
+     */
+    private static final int ROUNDS = 20;
+
+    /**
+     * The number of static elements in the large test template; they are
+     * split into {@link #FIELD_COUNT} blocks, each block contains one input
+     */
+    private static final int STATIC_COUNT = 5000;
+
+    /**
+     * Appends the large test content to the given buffer: blocks of static
+     * elements, each block is closed by the given slot markup
+     * 
+     * @param buf the buffer where the content is appended
+     * @param slots the markup of slots; each item corresponds to one block
+     */
+    private static void appendLargeContent(StringBuffer buf, String[] slots) {
+        int spans = STATIC_COUNT / FIELD_COUNT - 1;
+        for (int i = 0; i < FIELD_COUNT; i++) {
+            buf.append("<div class='block'>");
+            for (int j = 0; j < spans; j++) {
+                buf.append("<span>Text ").append(i).append('.').append(j);
+                buf.append("</span>");
+            }
+            buf.append(slots[i]);
+            buf.append("</div>");
+        }
+    }
+
+    /**
+     * Returns the number of slot elements remaining in the given element
+     * 
+     * @param elem the element to check
+     * @return the number of slot elements
+     */
+    private static native int countSlots(Element elem)
+    /*-{
+        return elem.querySelectorAll("[data-tmps]").length;
+    }-*/;
+
+    /**
+     * Writes the given message to the console of the browser
+     * 
+     * @param message the message to write
+     */
+    private static native void log(String message)
+    /*-{
+        $wnd.console.log(message);
+    }-*/;
+
+    /**
+     * Adds all slot elements contained in the given element to the list by
+     * checking every element like the former binding did (it read the
+     * identifier of each element of the scope)
+     * 
+     * @param elem the element to check
+     * @param result the list where slot elements are added
+     */
+    private static void walkSlots(Element elem, List<Element> result) {
+        Element child = elem.getFirstChildElement();
+        while (child != null) {
+            String value = child.getAttribute(TemplateScope.SLOT_ATTRIBUTE);
+            if (TemplateScope.getSlotIndex(value) >= 0) {
+                result.add(child);
+            } else {
+                walkSlots(child, result);
+            }
+            child = child.getNextSiblingElement();
+        }
+    }
+
+    /**
+     * Returns a document with one template containing {@link #FIELD_COUNT}
+     * inputs in {@link #STATIC_COUNT} static elements
+     * 
+     * @return the text of the document
+     */
+    private static String newLargeDocument() {
+        String[] slots = new String[FIELD_COUNT];
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = "<x:input x:name='f" + i + "'/>";
+        }
+        StringBuffer buf = new StringBuffer();
+        buf.append("<x:templates xmlns:x='");
+        buf.append(NS_TEMPLATES);
+        buf.append("' xmlns='http://www.w3.org/1999/xhtml'>");
+        buf.append("<x:template x:name='large'>");
+        appendLargeContent(buf, slots);
+        buf.append("</x:template></x:templates>");
+        return buf.toString();
+    }
+
+    /**
+     * Returns a document with one template containing inputs mixed with
+     * nested static HTML; even inputs are placed in paragraphs, odd ones in
+     * <code>div</code> elements after static text. A panel field with its own
+     * input closes the template.
+     * 
+     * @return the text of the document
+     */
+    private static String newDocument() {
+        StringBuffer buf = new StringBuffer();
+        buf.append("<x:templates xmlns:x='");
+        buf.append(NS_TEMPLATES);
+        buf.append("' xmlns='http://www.w3.org/1999/xhtml'>");
+        buf.append("<x:template x:name='t'><div class='form'>");
+        for (int i = 0; i < FIELD_COUNT; i++) {
+            if (i % 2 == 0) {
+                buf.append("<p>Field ").append(i);
+                buf.append(": <x:input x:name='f").append(i).append("'/>");
+                buf.append("</p>");
+            } else {
+                buf.append("<div><span>Field ").append(i);
+                buf.append("</span><x:input x:name='f").append(i);
+                buf.append("'/></div>");
+            }
+        }
+        buf.append("<x:panel x:name='p'><x:input x:name='inner'/></x:panel>");
+        buf.append("</div></x:template></x:templates>");
+        return buf.toString();
+    }
+
+    /**
+     * @see com.google.gwt.junit.client.GWTTestCase#getModuleName()
+     */
+    @Override
+    public String getModuleName() {
+        return "org.github.gwttemplate.GWTTemplatesTest";
+    }
+
+    /**
+     * Returns the widget of the only field with the specified name
+     * 
+     * @param panel the panel containing the field
+     * @param name the name of the field
+     * @return the widget of the field
+     */
+    private Widget getWidget(TemplateTopPanel panel, String name) {
+        List<FieldInfo<?>> fields = panel.getFieldInfo(name);
+        assertNotNull(fields);
+        assertEquals(1, fields.size());
+        return fields.get(0).getWidget();
+    }
+
+    /**
+     * Builds a panel from the test template and checks that all widgets
+     * replaced their slots in the document order
+     * 
+     * @param prototype if this flag is <code>true</code> then the template is
+     *        instantiated in the prototype-clone mode
+     */
+    private void checkBinding(boolean prototype) {
+        TemplatePanelBuilder builder = new TemplatePanelBuilder(
+            new FieldInfoFactoryRegistry());
+        builder.addTemplates(newDocument());
+        builder.setPrototypeMode("t", prototype);
+        TemplateTopPanel panel = builder.buildPanel("t");
+        Element root = panel.getElement();
+        assertEquals(0, countSlots(root));
+
+        NodeList<Element> inputs = root.getElementsByTagName("input");
+        assertEquals(FIELD_COUNT + 1, inputs.getLength());
+        for (int i = 0; i < FIELD_COUNT; i++) {
+            Widget widget = getWidget(panel, "f" + i);
+            Element elem = widget.getElement();
+            assertSame(inputs.getItem(i), elem);
+            assertNotNull(widget.getParent());
+            String tag = elem.getParentElement().getTagName();
+            assertEquals(i % 2 == 0 ? "p" : "div", tag.toLowerCase());
+        }
+
+        Widget container = getWidget(panel, "p");
+        Widget inner = getWidget(panel, "inner");
+        assertTrue(root.isOrHasChild(container.getElement()));
+        assertTrue(container.getElement().isOrHasChild(inner.getElement()));
+        assertSame(inputs.getItem(FIELD_COUNT), inner.getElement());
+    }
+
+    /**
+     * Builds a panel with {@link #STATIC_COUNT} static elements and
+     * {@link #FIELD_COUNT} widgets and checks that all widgets are bound
+     */
+    public void testLargeTemplateBinding() {
+        TemplatePanelBuilder builder = new TemplatePanelBuilder(
+            new FieldInfoFactoryRegistry());
+        builder.addTemplates(newLargeDocument());
+        // The first build compiles the template
+        builder.buildPanel("large");
+        double start = Duration.currentTimeMillis();
+        TemplateTopPanel panel = null;
+        for (int i = 0; i < ROUNDS; i++) {
+            panel = builder.buildPanel("large");
+        }
+        double time = (Duration.currentTimeMillis() - start) / ROUNDS;
+        log("buildPanel with "
+            + STATIC_COUNT
+            + " static elements and "
+            + FIELD_COUNT
+            + " widgets: "
+            + time
+            + " ms");
+
+        Element root = panel.getElement();
+        assertEquals(0, countSlots(root));
+        NodeList<Element> inputs = root.getElementsByTagName("input");
+        assertEquals(FIELD_COUNT, inputs.getLength());
+        for (int i = 0; i < FIELD_COUNT; i++) {
+            assertSame(inputs.getItem(i), getWidget(panel, "f" + i)
+                .getElement());
+        }
+    }
+
+    /**
+     * Compares the time of the selector query used to find slot elements
+     * with the time of the former walk over all elements of a scope with
+     * {@link #STATIC_COUNT} static elements and {@link #FIELD_COUNT} slots
+     */
+    public void testSlotLookupBenchmark() {
+        String[] slots = new String[FIELD_COUNT];
+        for (int i = 0; i < slots.length; i++) {
+            StringBuffer slot = new StringBuffer();
+            TemplateScope.serializeSlot(i, slot);
+            slots[i] = slot.toString();
+        }
+        StringBuffer buf = new StringBuffer();
+        appendLargeContent(buf, slots);
+        Element elem = Document.get().createDivElement();
+        elem.setInnerHTML(buf.toString());
+
+        // Both lookups should find the same slots in the same order
+        NodeList<Element> list = TemplatePanel.getSlotElements(elem);
+        List<Element> walked = new ArrayList<Element>();
+        walkSlots(elem, walked);
+        assertEquals(FIELD_COUNT, list.getLength());
+        assertEquals(FIELD_COUNT, walked.size());
+        for (int i = 0; i < FIELD_COUNT; i++) {
+            assertSame(walked.get(i), list.getItem(i));
+        }
+
+        double start = Duration.currentTimeMillis();
+        for (int i = 0; i < ROUNDS; i++) {
+            TemplatePanel.getSlotElements(elem).getLength();
+        }
+        double selectorTime = (Duration.currentTimeMillis() - start) / ROUNDS;
+        start = Duration.currentTimeMillis();
+        for (int i = 0; i < ROUNDS; i++) {
+            walkSlots(elem, new ArrayList<Element>());
+        }
+        double walkTime = (Duration.currentTimeMillis() - start) / ROUNDS;
+        String report = "Slot lookup with "
+            + STATIC_COUNT
+            + " static elements and "
+            + FIELD_COUNT
+            + " slots: selector "
+            + selectorTime
+            + " ms, element walk "
+            + walkTime
+            + " ms";
+        log(report);
+        assertTrue(report, selectorTime < walkTime);
+    }
+
+    public void testBinding() {
+        checkBinding(false);
+    }
+
+    public void testBindingInPrototypeMode() {
+        checkBinding(true);
+    }
+
+}
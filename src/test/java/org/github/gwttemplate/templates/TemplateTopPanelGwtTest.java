@@ -0,0 +1,228 @@
+/*******************************************************************************
+ * Copyright (c) 2005,2008 Cognium Systems SA and others.
+ * All rights reserved. This program and the accompanying materials
+ * are made available under the terms of the Apache License, Version 2.0
+ * which accompanies this distribution, and is available at
+ * http://www.apache.org/licenses/LICENSE-2.0
+ * 
+ * Contributors:
+ *     Cognium Systems SA - initial API and implementation
+ *******************************************************************************/
+package org.github.gwttemplate.templates;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.google.gwt.core.client.Duration;
+import com.google.gwt.junit.client.GWTTestCase;
+import com.google.gwt.user.client.ui.TextBox;
+import com.google.gwt.user.client.ui.Widget;
+
+/**
+ * Tests the lookup of fields by their widgets in {@link TemplateTopPanel}.
+ * Results of the identity index are compared with the former linear scan
+ * over all fields of the panel.
+ * 
+ * 
+ */
+public class TemplateTopPanelGwtTest extends GWTTestCase
+    implements
+    TemplateNamespaces {
+
+    /**
+     * The number of field names in the test template; each name is used by
+     * two fields
+     */
+    private static final int NAME_COUNT = 1000;
+
+    /**
+     * The number of repetitions of lookups of all widgets in the benchmark
+     */
+    private static final int ROUNDS = 10;
+
+    /**
+     * Only every <code>SCAN_STEP</code>-th widget is looked up by the linear
+     * scan; the scan of all widgets of the test template takes minutes
+     */
+    private static final int SCAN_STEP = 50;
+
+    /**
+     * Writes the given message to the console of the browser
+     * 
+     * @param message the message to write
+     */
+    private static native void log(String message)
+    /*-{
+        $wnd.console.log(message);
+    }-*/;
+
+    /**
+     * Returns a document with one template containing two inputs for each
+     * field name
+     * 
+     * @return the text of the document
+     */
+    private static String newDocument() {
+        StringBuffer buf = new StringBuffer();
+        buf.append("<x:templates xmlns:x='");
+        buf.append(NS_TEMPLATES);
+        buf.append("' xmlns='http://www.w3.org/1999/xhtml'>");
+        buf.append("<x:template x:name='t'>");
+        for (int i = 0; i < NAME_COUNT; i++) {
+            buf.append("<p><x:input x:name='f").append(i).append("'/>");
+            buf.append("<x:input x:name='f").append(i).append("'/></p>");
+        }
+        buf.append("</x:template></x:templates>");
+        return buf.toString();
+    }
+
+    /**
+     * Returns the field containing the given widget using the linear scan
+     * over all fields of the panel (the former implementation of
+     * {@link TemplateTopPanel#getFieldByWidget(Widget)})
+     * 
+     * @param panel the panel to check
+     * @param widget the widget to find
+     * @return the field containing the widget or <code>null</code>
+     */
+    private static FieldInfo<?> scanFieldByWidget(
+        TemplateTopPanel panel,
+        Widget widget) {
+        for (String name : panel.getFieldNames()) {
+            List<FieldInfo<?>> fields = panel.getFieldInfo(name);
+            if (fields == null)
+                continue;
+            for (FieldInfo<?> field : fields) {
+                if (field.hasWidget() && field.getWidget() == widget)
+                    return field;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @see com.google.gwt.junit.client.GWTTestCase#getModuleName()
+     */
+    @Override
+    public String getModuleName() {
+        return "org.github.gwttemplate.GWTTemplatesTest";
+    }
+
+    /**
+     * Returns a new panel built from the test template
+     * 
+     * @return a new panel
+     */
+    private TemplateTopPanel newPanel() {
+        TemplatePanelBuilder builder = new TemplatePanelBuilder(
+            new FieldInfoFactoryRegistry());
+        builder.addTemplates(newDocument());
+        return builder.buildPanel("t");
+    }
+
+    /**
+     * Returns all fields of the given panel built from the test template
+     * 
+     * @param panel the panel
+     * @return all fields of the panel
+     */
+    private List<FieldInfo<?>> getFields(TemplateTopPanel panel) {
+        List<FieldInfo<?>> result = new ArrayList<FieldInfo<?>>();
+        for (int i = 0; i < NAME_COUNT; i++) {
+            List<FieldInfo<?>> fields = panel.getFieldInfo("f" + i);
+            assertEquals(2, fields.size());
+            result.addAll(fields);
+        }
+        return result;
+    }
+
+    public void testLookup() {
+        TemplateTopPanel panel = newPanel();
+        List<FieldInfo<?>> fields = getFields(panel);
+        for (int i = 0; i < fields.size(); i++) {
+            FieldInfo<?> field = fields.get(i);
+            Widget widget = field.getWidget();
+            assertSame(field, panel.getFieldByWidget(widget));
+            if (i % SCAN_STEP == 0) {
+                assertSame(scanFieldByWidget(panel, widget), panel
+                    .getFieldByWidget(widget));
+            }
+            assertSame(field, panel.getFieldByWidget(
+                field.getName(),
+                widget));
+        }
+    }
+
+    /**
+     * Compares the average time of a lookup in the identity index with the
+     * average time of a lookup by the former linear scan
+     */
+    public void testLookupBenchmark() {
+        TemplateTopPanel panel = newPanel();
+        List<FieldInfo<?>> fields = getFields(panel);
+        List<Widget> widgets = new ArrayList<Widget>();
+        for (FieldInfo<?> field : fields) {
+            widgets.add(field.getWidget());
+        }
+
+        int found = 0;
+        double start = Duration.currentTimeMillis();
+        for (int i = 0; i < ROUNDS; i++) {
+            for (Widget widget : widgets) {
+                if (panel.getFieldByWidget(widget) != null) {
+                    found++;
+                }
+            }
+        }
+        double indexTime = (Duration.currentTimeMillis() - start) / found;
+        assertEquals(ROUNDS * widgets.size(), found);
+
+        found = 0;
+        int scanned = 0;
+        start = Duration.currentTimeMillis();
+        for (int i = 0; i < widgets.size(); i += SCAN_STEP) {
+            scanned++;
+            if (scanFieldByWidget(panel, widgets.get(i)) != null) {
+                found++;
+            }
+        }
+        double scanTime = (Duration.currentTimeMillis() - start) / scanned;
+        assertEquals(scanned, found);
+
+        String report = "Lookup in a panel with "
+            + widgets.size()
+            + " widgets: identity index "
+            + indexTime
+            + " ms, linear scan "
+            + scanTime
+            + " ms per widget";
+        log(report);
+        assertTrue(report, indexTime < scanTime);
+    }
+
+    public void testLookupWithWrongName() {
+        TemplateTopPanel panel = newPanel();
+        Widget widget = panel.getFieldInfo("f0").get(0).getWidget();
+        assertNull(panel.getFieldByWidget("f1", widget));
+        assertNull(panel.getFieldByWidget("unknown", widget));
+    }
+
+    public void testLookupOfForeignWidget() {
+        TemplateTopPanel panel = newPanel();
+        Widget widget = new TextBox();
+        assertNull(scanFieldByWidget(panel, widget));
+        assertNull(panel.getFieldByWidget(widget));
+    }
+
+    public void testLookupOfRemovedField() {
+        TemplateTopPanel panel = newPanel();
+        FieldInfo<?> field = panel.getFieldInfo("f0").get(0);
+        FieldInfo<?> other = panel.getFieldInfo("f0").get(1);
+        Widget widget = field.getWidget();
+        field.remove();
+        assertNull(scanFieldByWidget(panel, widget));
+        assertNull(panel.getFieldByWidget(widget));
+        assertSame(other, panel.getFieldByWidget(other.getWidget()));
+    }
+
+}